@@ -0,0 +1,61 @@
+package org.example.counter;
+
+import ai.djl.modality.cv.output.BoundingBox;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.modality.cv.output.Rectangle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lọc vehicle từ DetectedObjects (output của YOLO gồm cả class không phải xe, confidence thấp)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Dcamera.log.level=OFF"})
+public class FilterBenchmark {
+    private static final String[] CLASSES = {"car", "person", "motorcycle", "bicycle", "bus", "truck", "traffic light"};
+
+    @Param({"10", "100", "1000"})
+    public int density;
+
+    private DetectedObjects detectedObjects;
+    private DetectionBuffer vehicles;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(3);
+        List<String> classNames = new ArrayList<>(density);
+        List<Double> probabilities = new ArrayList<>(density);
+        List<BoundingBox> boxes = new ArrayList<>(density);
+        for (int i = 0; i < density; i++) {
+            classNames.add(CLASSES[random.nextInt(CLASSES.length)]);
+            probabilities.add(random.nextDouble());
+            boxes.add(new Rectangle(random.nextDouble() * 0.9, random.nextDouble() * 0.9, 0.05, 0.05));
+        }
+        detectedObjects = new DetectedObjects(classNames, probabilities, boxes);
+        vehicles = new DetectionBuffer(density);
+    }
+
+    @Benchmark
+    public DetectionBuffer filter() {
+        VehicleFilter.filter(detectedObjects, vehicles);
+        return vehicles;
+    }
+}
@@ -0,0 +1,65 @@
+package org.example.counter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IoU giữa tất cả track và detection của 1 frame: từng cặp, ma trận scalar và kernel SIMD
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"--add-modules", "jdk.incubator.vector", "-Dcamera.log.level=OFF"})
+public class IouBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int density;
+
+    private BoxBuffer tracks;
+    private BoxBuffer detections;
+    private float[] matrix;
+
+    @Setup
+    public void setup() {
+        DetectionBuffer[] stream = SyntheticDetections.stream(density, 2, 0.0, 7);
+        tracks = stream[0];
+        detections = stream[1];
+        matrix = new float[tracks.size() * detections.size()];
+    }
+
+    @Benchmark
+    public void pairwise(Blackhole blackhole) {
+        for (int t = 0; t < tracks.size(); t++) {
+            for (int d = 0; d < detections.size(); d++) {
+                blackhole.consume(BoxBuffer.iou(tracks, t, detections, d));
+            }
+        }
+    }
+
+    @Benchmark
+    public float[] matrixScalar() {
+        IouMatrix.computeScalar(tracks, detections, matrix);
+        return matrix;
+    }
+
+    @Benchmark
+    public float[] matrixDispatch() {
+        // Kernel SIMD nếu có jdk.incubator.vector, ngược lại giống matrixScalar
+        IouMatrix.compute(tracks, detections, matrix);
+        return matrix;
+    }
+}
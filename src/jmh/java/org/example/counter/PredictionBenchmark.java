@@ -0,0 +1,58 @@
+package org.example.counter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chỉ đo {@link TrackStore#appendPredictedBox}: dự đoán box cho mọi track đang bị mất (1-3 frame),
+ * ghi vào BoxBuffer dùng lại. Không có biến thể tính trên object TrackedVehicle để so sánh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Dcamera.log.level=OFF"})
+public class PredictionBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int density;
+
+    private TrackStore store;
+    private BoxBuffer predicted;
+
+    @Setup
+    public void setup() {
+        DetectionBuffer detections = SyntheticDetections.stream(density, 1, 0.0, 11)[0];
+        int count = detections.size();
+        store = new TrackStore(count);
+        predicted = new BoxBuffer(count);
+        for (int i = 0; i < count; i++) {
+            int missing = 1 + i % 3;
+            float vy = detections.getHeight(i) * 0.1f;
+            int index = store.add(i + 1, detections, i);
+            store.missing[index] = missing;
+            store.vy[index] = vy;
+        }
+    }
+
+    @Benchmark
+    public BoxBuffer trackStore() {
+        predicted.clear();
+        for (int i = 0; i < store.size(); i++) {
+            store.appendPredictedBox(i, predicted);
+        }
+        return predicted;
+    }
+}
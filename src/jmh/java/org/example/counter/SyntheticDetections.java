@@ -0,0 +1,65 @@
+package org.example.counter;
+
+import java.util.Random;
+
+/**
+ * Luồng detection giả lập cho benchmark: N xe chạy dọc khung hình với vận tốc riêng,
+ * box có nhiễu và thỉnh thoảng bị mất detection (giống output của YOLO), không cần model
+ */
+final class SyntheticDetections {
+    private static final String[] CLASSES = {"car", "car", "car", "motorcycle", "motorcycle", "bus", "truck"};
+
+    private SyntheticDetections() {
+    }
+
+    /**
+     * Sinh sẵn các frame liên tiếp (tọa độ normalized [0, 1])
+     *
+     * @param objects Số xe mỗi frame
+     * @param frames Số frame
+     * @param dropRate Tỉ lệ detection bị mất mỗi frame
+     */
+    static DetectionBuffer[] stream(int objects, int frames, double dropRate, long seed) {
+        Random random = new Random(seed);
+
+        // Box nhỏ dần theo mật độ để các xe không chồng lên nhau hoàn toàn
+        float size = (float) Math.min(0.1, 0.8 / Math.sqrt(objects));
+        float[] cx = new float[objects];
+        float[] cy = new float[objects];
+        float[] vx = new float[objects];
+        float[] vy = new float[objects];
+        String[] cls = new String[objects];
+        for (int i = 0; i < objects; i++) {
+            cx[i] = random.nextFloat();
+            cy[i] = random.nextFloat();
+            vx[i] = (random.nextFloat() - 0.5f) * size * 0.05f;
+            vy[i] = (0.05f + random.nextFloat() * 0.2f) * size;
+            cls[i] = CLASSES[random.nextInt(CLASSES.length)];
+        }
+
+        DetectionBuffer[] stream = new DetectionBuffer[frames];
+        for (int f = 0; f < frames; f++) {
+            DetectionBuffer buffer = new DetectionBuffer(objects);
+            for (int i = 0; i < objects; i++) {
+                cx[i] += vx[i];
+                cy[i] += vy[i];
+                if (cy[i] > 1f) {
+                    // Xe ra khỏi khung hình thì xe mới vào từ phía trên
+                    cy[i] -= 1f;
+                    cx[i] = random.nextFloat();
+                }
+                if (random.nextDouble() < dropRate) {
+                    continue;
+                }
+                float jitter = size * 0.03f;
+                float w = size * (1f + (random.nextFloat() - 0.5f) * 0.1f);
+                float h = size * (1f + (random.nextFloat() - 0.5f) * 0.1f);
+                buffer.add(cx[i] - w / 2 + (random.nextFloat() - 0.5f) * jitter,
+                        cy[i] - h / 2 + (random.nextFloat() - 0.5f) * jitter,
+                        w, h, cls[i], 0.3 + random.nextDouble() * 0.7);
+            }
+            stream[f] = buffer;
+        }
+        return stream;
+    }
+}
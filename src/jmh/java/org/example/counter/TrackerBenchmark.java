@@ -0,0 +1,63 @@
+package org.example.counter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VehicleTracker.update trên luồng detection giả lập, mỗi invocation = 1 frame
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"--add-modules", "jdk.incubator.vector", "-Dcamera.log.level=OFF"})
+public class TrackerBenchmark {
+    private static final int FRAMES = 256;
+
+    @Param({"10", "100", "1000"})
+    public int density;
+
+    @Param({"0.05"})
+    public double dropRate;
+
+    private DetectionBuffer[] stream;
+    private VehicleTracker tracker;
+    private int frame;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        stream = SyntheticDetections.stream(density, FRAMES, dropRate, 42);
+    }
+
+    @Setup(Level.Iteration)
+    public void newTracker() {
+        tracker = new VehicleTracker(0.05, 10);
+        tracker.setMinHits(3);
+        tracker.setMaxActiveTracks(Math.max(256, density * 2));
+        frame = 0;
+    }
+
+    @Benchmark
+    public int update() {
+        if (frame == FRAMES) {
+            // Hết luồng: bắt đầu lại từ tracker rỗng để mọi vòng có cùng chi phí
+            tracker.reset();
+            frame = 0;
+        }
+        tracker.update(stream[frame++], 1.0);
+        return tracker.getTracks().size();
+    }
+}
@@ -0,0 +1,337 @@
+package org.example.counter;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Log bất đồng bộ cho hot path: thread xử lý frame chỉ ghi format + tham số vào ring buffer
+ * cấp phát sẵn, 1 thread nền format và in ra stdout theo lô
+ *
+ * Level và sampling cấu hình theo từng camera:
+ *   -Dcamera.log.level=INFO                  level mặc định
+ *   -Dcamera.log.levels=cam-1=DEBUG,cam-2=OFF level riêng từng camera
+ *   -Dcamera.log.sample=1                    in 1/N dòng bảng frame (mặc định mọi frame)
+ *   -Dcamera.log.samples=cam-1=10            sampling riêng từng camera
+ *   -Dcamera.log.bufferSize=8192             số slot của ring buffer (làm tròn lên lũy thừa 2)
+ *
+ * Caller kiểm tra {@link #isEnabled} / {@link #isSampled} trước khi build tham số,
+ * nên khi level bị hạ thì frame không tốn chi phí string nào.
+ * Ring đầy thì message bị bỏ (đếm trong {@link #getDroppedCount()}), không chặn thread xử lý frame
+ */
+public final class AsyncLog {
+
+    public enum Level {
+        OFF, ERROR, WARN, INFO, DEBUG
+    }
+
+    private static final int MAX_ARGS = 8;
+
+    private static final Level DEFAULT_LEVEL = parseLevel(System.getProperty("camera.log.level"), Level.INFO);
+    private static final int DEFAULT_SAMPLE_EVERY = Math.max(1, Integer.getInteger("camera.log.sample", 1));
+    private static final int BUFFER_SIZE = Integer.highestOneBit(
+            (Math.max(64, Integer.getInteger("camera.log.bufferSize", 8192)) - 1) << 1);
+
+    // Cấu hình riêng từng camera (camera không có trong map dùng mặc định)
+    private static final Map<String, Level> CAMERA_LEVELS = new ConcurrentHashMap<>();
+    private static final Map<String, Integer> CAMERA_SAMPLES = new ConcurrentHashMap<>();
+
+    private static final Slot[] RING = new Slot[BUFFER_SIZE];
+    private static final int MASK = BUFFER_SIZE - 1;
+    private static final AtomicLong TAIL = new AtomicLong();
+    private static volatile long head = 0;
+    // Vị trí đã thực sự ghi ra stream (writer in theo lô nên có thể chậm hơn head)
+    private static volatile long written = 0;
+    // Mốc mà flush() đang chờ: writer ghi batch ngay khi vượt qua, kể cả khi log liên tục
+    private static volatile long flushTarget = 0;
+    private static final AtomicLong DROPPED = new AtomicLong();
+
+    private static final Thread WRITER;
+
+    static {
+        for (int i = 0; i < BUFFER_SIZE; i++) {
+            RING[i] = new Slot(i);
+        }
+        parseCameraLevels(System.getProperty("camera.log.levels"));
+        parseCameraSamples(System.getProperty("camera.log.samples"));
+
+        WRITER = new Thread(AsyncLog::drainLoop, "async-log");
+        WRITER.setDaemon(true);
+        WRITER.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(1000), "async-log-flush"));
+    }
+
+    /**
+     * 1 slot của ring buffer, cấp phát 1 lần và dùng lại
+     * sequence = vị trí đã publish + 1, writer chỉ đọc slot khi sequence khớp
+     */
+    private static final class Slot {
+        volatile long sequence;
+        Level level;
+        String cameraId;
+        String format;
+        final Object[] args = new Object[MAX_ARGS];
+        int argCount;
+
+        Slot(long index) {
+            this.sequence = index;
+        }
+    }
+
+    private AsyncLog() {
+    }
+
+    /**
+     * Level hiệu lực của camera (null = mặc định)
+     */
+    public static Level getLevel(String cameraId) {
+        if (cameraId == null) {
+            return DEFAULT_LEVEL;
+        }
+        Level level = CAMERA_LEVELS.get(cameraId);
+        return level != null ? level : DEFAULT_LEVEL;
+    }
+
+    public static void setLevel(String cameraId, Level level) {
+        if (level == null) {
+            CAMERA_LEVELS.remove(cameraId);
+        } else {
+            CAMERA_LEVELS.put(cameraId, level);
+        }
+    }
+
+    /**
+     * In 1/N dòng bảng frame của camera
+     */
+    public static void setSampleEvery(String cameraId, int sampleEvery) {
+        CAMERA_SAMPLES.put(cameraId, Math.max(1, sampleEvery));
+    }
+
+    public static boolean isEnabled(String cameraId, Level level) {
+        return level != Level.OFF && level.ordinal() <= getLevel(cameraId).ordinal();
+    }
+
+    /**
+     * Log theo frame: level bật và frame nằm trong mẫu sampling của camera
+     */
+    public static boolean isSampled(String cameraId, Level level, long frameNumber) {
+        if (!isEnabled(cameraId, level)) {
+            return false;
+        }
+        Integer sampleEvery = cameraId != null ? CAMERA_SAMPLES.get(cameraId) : null;
+        int every = sampleEvery != null ? sampleEvery : DEFAULT_SAMPLE_EVERY;
+        return every <= 1 || frameNumber % every == 0;
+    }
+
+    public static void log(String cameraId, Level level, String message) {
+        Slot slot = claim(cameraId, level, message);
+        if (slot != null) {
+            publish(slot, 0);
+        }
+    }
+
+    public static void log(String cameraId, Level level, String format, Object a0) {
+        Slot slot = claim(cameraId, level, format);
+        if (slot != null) {
+            slot.args[0] = a0;
+            publish(slot, 1);
+        }
+    }
+
+    public static void log(String cameraId, Level level, String format, Object a0, Object a1) {
+        Slot slot = claim(cameraId, level, format);
+        if (slot != null) {
+            slot.args[0] = a0;
+            slot.args[1] = a1;
+            publish(slot, 2);
+        }
+    }
+
+    public static void log(String cameraId, Level level, String format, Object a0, Object a1, Object a2) {
+        Slot slot = claim(cameraId, level, format);
+        if (slot != null) {
+            slot.args[0] = a0;
+            slot.args[1] = a1;
+            slot.args[2] = a2;
+            publish(slot, 3);
+        }
+    }
+
+    public static void log(String cameraId, Level level, String format,
+                           Object a0, Object a1, Object a2, Object a3) {
+        Slot slot = claim(cameraId, level, format);
+        if (slot != null) {
+            slot.args[0] = a0;
+            slot.args[1] = a1;
+            slot.args[2] = a2;
+            slot.args[3] = a3;
+            publish(slot, 4);
+        }
+    }
+
+    /**
+     * Nhiều tham số (tối đa 8), tham số cuối là Throwable thì in kèm stack trace
+     */
+    public static void logv(String cameraId, Level level, String format, Object... args) {
+        Slot slot = claim(cameraId, level, format);
+        if (slot != null) {
+            int n = Math.min(args.length, MAX_ARGS);
+            System.arraycopy(args, 0, slot.args, 0, n);
+            publish(slot, n);
+        }
+    }
+
+    /**
+     * Số message bị bỏ vì ring buffer đầy
+     */
+    public static long getDroppedCount() {
+        return DROPPED.get();
+    }
+
+    /**
+     * Chờ thread nền in hết message đã publish (gọi trước khi in trực tiếp ra stdout, khi shutdown)
+     */
+    public static void flush(long timeoutMillis) {
+        long target = TAIL.get();
+        if (flushTarget < target) {
+            flushTarget = target;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (written < target && System.nanoTime() < deadline) {
+            LockSupport.unpark(WRITER);
+            LockSupport.parkNanos(100_000);
+        }
+    }
+
+    private static Slot claim(String cameraId, Level level, String format) {
+        if (!isEnabled(cameraId, level)) {
+            return null;
+        }
+        while (true) {
+            long position = TAIL.get();
+            if (position - head >= BUFFER_SIZE) {
+                DROPPED.incrementAndGet();
+                return null;
+            }
+            if (TAIL.compareAndSet(position, position + 1)) {
+                Slot slot = RING[(int) (position & MASK)];
+                slot.level = level;
+                slot.cameraId = cameraId;
+                slot.format = format;
+                return slot;
+            }
+        }
+    }
+
+    private static void publish(Slot slot, int argCount) {
+        slot.argCount = argCount;
+        // sequence ghi sau cùng (volatile) để writer thấy đủ các field
+        slot.sequence = slot.sequence + 1;
+    }
+
+    private static void drainLoop() {
+        StringBuilder out = new StringBuilder(16 * 1024);
+        StringBuilder err = new StringBuilder(1024);
+        long position = head;
+
+        while (true) {
+            Slot slot = RING[(int) (position & MASK)];
+            if (slot.sequence != position + 1) {
+                writeBatch(out, err);
+                written = position;
+                LockSupport.parkNanos(1_000_000);
+                continue;
+            }
+
+            StringBuilder target = slot.level == Level.ERROR ? err : out;
+            Throwable error = format(slot, target);
+
+            // Trả slot cho producer: sequence của vòng kế tiếp
+            for (int i = 0; i < slot.argCount; i++) {
+                slot.args[i] = null;
+            }
+            slot.cameraId = null;
+            slot.format = null;
+            slot.sequence = position + BUFFER_SIZE;
+            position++;
+
+            if (error != null) {
+                writeBatch(out, err);
+                error.printStackTrace();
+                written = position;
+            } else if (out.length() > 8 * 1024 || (written < flushTarget && position >= flushTarget)) {
+                // Ghi ngay khi đã tới mốc flush đang chờ, không đợi tới lúc ring rảnh
+                writeBatch(out, err);
+                written = position;
+            }
+            head = position;
+        }
+    }
+
+    private static Throwable format(Slot slot, StringBuilder target) {
+        Throwable error = null;
+        int argCount = slot.argCount;
+        if (argCount > 0 && slot.args[argCount - 1] instanceof Throwable t) {
+            error = t;
+        }
+        try {
+            if (argCount == 0) {
+                target.append(slot.format);
+            } else {
+                Object[] args = new Object[argCount];
+                System.arraycopy(slot.args, 0, args, 0, argCount);
+                target.append(String.format(slot.format, args));
+            }
+        } catch (RuntimeException e) {
+            target.append(slot.format).append(" [bad log format: ").append(e.getMessage()).append(']');
+        }
+        target.append(System.lineSeparator());
+        return error;
+    }
+
+    private static void writeBatch(StringBuilder out, StringBuilder err) {
+        write(System.out, out);
+        write(System.err, err);
+    }
+
+    private static void write(PrintStream stream, StringBuilder buffer) {
+        if (buffer.length() > 0) {
+            stream.print(buffer);
+            stream.flush();
+            buffer.setLength(0);
+        }
+    }
+
+    private static void parseCameraLevels(String spec) {
+        CameraProperties.parse(spec).forEach((cameraId, value) -> {
+            Level level = parseLevel(value, null);
+            if (level != null) {
+                CAMERA_LEVELS.put(cameraId, level);
+            }
+        });
+    }
+
+    private static void parseCameraSamples(String spec) {
+        CameraProperties.parse(spec).forEach((cameraId, value) -> {
+            try {
+                CAMERA_SAMPLES.put(cameraId, Math.max(1, Integer.parseInt(value)));
+            } catch (NumberFormatException ignored) {
+                // Bỏ qua giá trị không hợp lệ, camera dùng sampling mặc định
+            }
+        });
+    }
+
+    private static Level parseLevel(String value, Level fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Level.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return fallback;
+        }
+    }
+}
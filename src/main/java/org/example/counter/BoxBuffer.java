@@ -0,0 +1,100 @@
+package org.example.counter;
+
+import ai.djl.modality.cv.output.Rectangle;
+
+import java.util.Arrays;
+
+/**
+ * Danh sách bounding box lưu dạng mảng float song song (x, y, width, height)
+ * Dùng lại giữa các frame để tránh cấp phát object Rectangle trên hot path
+ */
+public class BoxBuffer {
+    float[] x;
+    float[] y;
+    float[] w;
+    float[] h;
+    int size;
+
+    public BoxBuffer(int capacity) {
+        int c = Math.max(1, capacity);
+        this.x = new float[c];
+        this.y = new float[c];
+        this.w = new float[c];
+        this.h = new float[c];
+    }
+
+    /**
+     * Thêm 1 box, trả về index của box
+     */
+    public int add(double boxX, double boxY, double boxWidth, double boxHeight) {
+        ensureCapacity(size + 1);
+        x[size] = (float) boxX;
+        y[size] = (float) boxY;
+        w[size] = (float) boxWidth;
+        h[size] = (float) boxHeight;
+        return size++;
+    }
+
+    public int add(Rectangle rect) {
+        return add(rect.getX(), rect.getY(), rect.getWidth(), rect.getHeight());
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Số slot đã cấp phát (ước tính bộ nhớ)
+     */
+    int capacity() {
+        return x.length;
+    }
+
+    public float getX(int i) {
+        return x[i];
+    }
+
+    public float getY(int i) {
+        return y[i];
+    }
+
+    public float getWidth(int i) {
+        return w[i];
+    }
+
+    public float getHeight(int i) {
+        return h[i];
+    }
+
+    void ensureCapacity(int capacity) {
+        if (capacity > x.length) {
+            int newCapacity = Math.max(capacity, x.length * 2);
+            x = Arrays.copyOf(x, newCapacity);
+            y = Arrays.copyOf(y, newCapacity);
+            w = Arrays.copyOf(w, newCapacity);
+            h = Arrays.copyOf(h, newCapacity);
+        }
+    }
+
+    /**
+     * IoU giữa box i của buffer a và box j của buffer b
+     */
+    static float iou(BoxBuffer a, int i, BoxBuffer b, int j) {
+        float x1 = Math.max(a.x[i], b.x[j]);
+        float y1 = Math.max(a.y[i], b.y[j]);
+        float x2 = Math.min(a.x[i] + a.w[i], b.x[j] + b.w[j]);
+        float y2 = Math.min(a.y[i] + a.h[i], b.y[j] + b.h[j]);
+
+        float intersection = Math.max(0f, x2 - x1) * Math.max(0f, y2 - y1);
+        float union = a.w[i] * a.h[i] + b.w[j] * b.h[j] - intersection;
+
+        if (union < 1e-6f) {
+            return 0f;
+        }
+        return intersection / union;
+    }
+}
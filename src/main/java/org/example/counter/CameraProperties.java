@@ -0,0 +1,30 @@
+package org.example.counter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Đọc cấu hình riêng từng camera dạng "cam-1=A,cam-2=B" từ system property
+ */
+final class CameraProperties {
+
+    private CameraProperties() {
+    }
+
+    /**
+     * Parse thành map camera → giá trị (giữ thứ tự, bỏ qua phần tử không có '=')
+     */
+    static Map<String, String> parse(String spec) {
+        Map<String, String> values = new LinkedHashMap<>();
+        if (spec == null || spec.isBlank()) {
+            return values;
+        }
+        for (String entry : spec.split(",")) {
+            int eq = entry.lastIndexOf('=');
+            if (eq > 0) {
+                values.put(entry.substring(0, eq).trim(), entry.substring(eq + 1).trim());
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,308 @@
+package org.example.counter;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * Trạng thái tracking riêng của 1 camera/stream
+ * Mỗi camera có tracker, frame counter riêng nên frame của các camera không bị trộn lẫn
+ */
+public class CameraSession {
+    private final String cameraId;
+    private final VehicleTracker tracker;
+
+    private int frameCount = 0;
+    private boolean headerPrinted = false;
+
+    // Buffer detection của frame hiện tại, dùng lại giữa các frame
+    private final DetectionBuffer detections = new DetectionBuffer(64);
+
+    // Pipeline: giới hạn số frame đang xử lý và chuỗi tracking tuần tự theo thứ tự frame
+    // Slot trống và hàng chờ slot (FIFO), slot trả về được chuyển thẳng cho frame đang chờ lâu nhất
+    private final ArrayDeque<CompletableFuture<Void>> slotWaiters = new ArrayDeque<>();
+    private int freeSlots;
+    private final int maxInFlightFrames;
+    private CompletableFuture<?> trackingTail = CompletableFuture.completedFuture(null);
+    // Motion gate so sánh với keyframe nên cũng phải chạy đúng thứ tự frame (decode thì song song)
+    private CompletableFuture<?> motionGateTail = CompletableFuture.completedFuture(null);
+
+    // Detect-every-N: đếm frame đã submit, tracker báo cần detection khi dự đoán chưa đáng tin
+    private long submittedFrames = 0;
+    private volatile boolean detectionRequired = true;
+    private volatile int lastImageHeight = 0;
+
+    // Vùng ảnh đưa vào detector (null = cả frame)
+    private volatile RegionOfInterest regionOfInterest;
+
+    // Kích thước ảnh đầu vào detector (chọn tier của service)
+    private volatile int inputSize = ModelRegistry.DEFAULT_INPUT_SIZE;
+
+    // Bỏ qua inference khi frame không đổi (null = tắt)
+    private volatile MotionGate motionGate;
+
+    // Kích thước frame gần nhất: encoded (direct = buffer off-heap của gRPC) và ảnh decode
+    private volatile long lastEncodedBytes;
+    private volatile boolean lastEncodedDirect;
+    private volatile long lastDecodedBytes;
+
+    // Độ trễ từng stage của pipeline
+    private final StageMetrics metrics = new StageMetrics();
+
+    // Ước tính bộ nhớ: histogram các stage + object cố định, 1 slot track (13 mảng 4 byte), 1 slot detection
+    private static final long SESSION_BASE_BYTES = 64 * 1024;
+    private static final int TRACK_SLOT_BYTES = 52;
+    private static final int DETECTION_SLOT_BYTES = 24;
+
+    // Thời điểm truy cập cuối cùng (dùng để evict session idle)
+    private volatile long lastAccessNanos;
+
+    public CameraSession(String cameraId, VehicleTracker tracker) {
+        this(cameraId, tracker, 4);
+    }
+
+    /**
+     * @param maxInFlightFrames Số frame tối đa đang nằm trong pipeline của camera
+     */
+    public CameraSession(String cameraId, VehicleTracker tracker, int maxInFlightFrames) {
+        this.cameraId = cameraId;
+        this.tracker = tracker;
+        this.tracker.setCameraId(cameraId);
+        this.maxInFlightFrames = Math.max(1, maxInFlightFrames);
+        this.freeSlots = this.maxInFlightFrames;
+        this.lastAccessNanos = System.nanoTime();
+    }
+
+    public String getCameraId() {
+        return cameraId;
+    }
+
+    public VehicleTracker getTracker() {
+        return tracker;
+    }
+
+    /**
+     * Buffer detection dùng lại cho stage tracking (chỉ truy cập trong synchronized (session))
+     */
+    public DetectionBuffer getDetections() {
+        return detections;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Tăng frame counter, trả về số thứ tự frame hiện tại
+     */
+    public int nextFrame() {
+        return ++frameCount;
+    }
+
+    public boolean isHeaderPrinted() {
+        return headerPrinted;
+    }
+
+    public void setHeaderPrinted(boolean headerPrinted) {
+        this.headerPrinted = headerPrinted;
+    }
+
+    /**
+     * Chiếm 1 slot trong pipeline, chờ nếu camera đã có quá nhiều frame đang xử lý
+     */
+    public void acquireSlot() throws InterruptedException {
+        CompletableFuture<Void> slot = acquireSlotAsync();
+        try {
+            slot.get();
+        } catch (InterruptedException e) {
+            // Slot đã được cấp đúng lúc bị interrupt: trả lại cho frame khác
+            if (!slot.cancel(false)) {
+                releaseSlot();
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Chiếm 1 slot mà không chặn thread gọi (thread của transport gRPC)
+     * Future hoàn thành khi có slot, trên thread trả slot nếu phải chờ
+     */
+    public CompletableFuture<Void> acquireSlotAsync() {
+        synchronized (slotWaiters) {
+            if (freeSlots > 0) {
+                freeSlots--;
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            slotWaiters.add(waiter);
+            return waiter;
+        }
+    }
+
+    public void releaseSlot() {
+        CompletableFuture<Void> next;
+        do {
+            synchronized (slotWaiters) {
+                next = slotWaiters.poll();
+                if (next == null) {
+                    freeSlots++;
+                    return;
+                }
+            }
+            // Waiter đã bị hủy thì chuyển slot cho waiter tiếp theo
+        } while (!next.complete(null));
+    }
+
+    /**
+     * Số frame đang nằm trong pipeline của camera
+     */
+    public int getInFlightFrames() {
+        synchronized (slotWaiters) {
+            return maxInFlightFrames - freeSlots;
+        }
+    }
+
+    public StageMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Nối stage tracking của frame mới vào sau frame trước đó
+     * Gọi trong synchronized (session) để thứ tự nối đúng thứ tự frame tới
+     */
+    public <T> CompletableFuture<T> chainTracking(
+            Function<CompletableFuture<?>, CompletableFuture<T>> stage) {
+        CompletableFuture<T> next = stage.apply(trackingTail);
+        trackingTail = next;
+        return next;
+    }
+
+    /**
+     * Nối bước motion gate của frame mới vào sau frame trước đó
+     * Gọi trong synchronized (session) để thứ tự nối đúng thứ tự frame tới
+     */
+    public <T> CompletableFuture<T> chainMotionGate(
+            Function<CompletableFuture<?>, CompletableFuture<T>> stage) {
+        CompletableFuture<T> next = stage.apply(motionGateTail);
+        motionGateTail = next;
+        return next;
+    }
+
+    /**
+     * Quyết định frame vừa submit có chạy detection không
+     * Gọi trong synchronized (session) theo thứ tự frame tới
+     *
+     * @param interval Chạy detection mỗi N frame (1 = mọi frame)
+     */
+    public boolean scheduleDetection(int interval) {
+        boolean detect = interval <= 1
+                || detectionRequired
+                || lastImageHeight == 0
+                || submittedFrames % interval == 0;
+        submittedFrames++;
+        return detect;
+    }
+
+    public void setDetectionRequired(boolean detectionRequired) {
+        this.detectionRequired = detectionRequired;
+    }
+
+    public int getLastImageHeight() {
+        return lastImageHeight;
+    }
+
+    public void setLastImageHeight(int lastImageHeight) {
+        this.lastImageHeight = lastImageHeight;
+    }
+
+    public RegionOfInterest getRegionOfInterest() {
+        return regionOfInterest;
+    }
+
+    public void setRegionOfInterest(RegionOfInterest regionOfInterest) {
+        this.regionOfInterest = regionOfInterest;
+    }
+
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    public void setInputSize(int inputSize) {
+        this.inputSize = inputSize;
+    }
+
+    public MotionGate getMotionGate() {
+        return motionGate;
+    }
+
+    public void setMotionGate(MotionGate motionGate) {
+        this.motionGate = motionGate;
+    }
+
+    /**
+     * Ghi kích thước frame vừa decode (ước tính bộ nhớ của camera)
+     */
+    public void recordFrameSize(long encodedBytes, boolean encodedDirect, long decodedBytes) {
+        this.lastEncodedBytes = encodedBytes;
+        this.lastEncodedDirect = encodedDirect;
+        this.lastDecodedBytes = decodedBytes;
+    }
+
+    public boolean hasFrameSize() {
+        return lastDecodedBytes > 0;
+    }
+
+    /**
+     * Heap ước tính: tracker + buffer detection + histogram + ảnh decode/frame encode của các frame đang xử lý
+     */
+    public long estimateHeapBytes() {
+        long bytes = SESSION_BASE_BYTES
+                + (long) tracker.getTracks().capacity() * TRACK_SLOT_BYTES
+                + (long) detections.capacity() * DETECTION_SLOT_BYTES
+                + lastDecodedBytes * maxInFlightFrames;
+        return lastEncodedDirect ? bytes : bytes + lastEncodedBytes * maxInFlightFrames;
+    }
+
+    /**
+     * Off-heap ước tính: frame encode còn nằm trong direct buffer của gRPC
+     */
+    public long estimateOffHeapBytes() {
+        return lastEncodedDirect ? lastEncodedBytes * maxInFlightFrames : 0;
+    }
+
+    /**
+     * Đánh dấu session vừa được sử dụng
+     */
+    public void touch() {
+        this.lastAccessNanos = System.nanoTime();
+    }
+
+    /**
+     * Kiểm tra session có idle quá timeout không
+     */
+    public boolean isIdle(long nowNanos, long idleTimeoutNanos) {
+        return nowNanos - lastAccessNanos > idleTimeoutNanos;
+    }
+
+    /**
+     * Reset tracker và counter của session
+     */
+    public void reset() {
+        tracker.reset();
+        frameCount = 0;
+        headerPrinted = false;
+        detectionRequired = true;
+        if (motionGate != null) {
+            motionGate.reset();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CameraSession[id=%s, frames=%d, total=%d, active=%d]",
+                cameraId, frameCount, tracker.getTotalVehicleCount(), tracker.getActiveVehicleCount());
+    }
+}
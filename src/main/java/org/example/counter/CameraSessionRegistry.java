@@ -0,0 +1,193 @@
+package org.example.counter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Registry quản lý session theo camera id
+ * Session được chia vào nhiều lock stripe để các camera khác nhau không tranh chấp cùng 1 lock,
+ * session idle quá timeout sẽ bị evict để bộ nhớ không tăng mãi
+ */
+public class CameraSessionRegistry implements AutoCloseable {
+
+    private static final class Stripe {
+        private final Map<String, CameraSession> sessions = new HashMap<>();
+    }
+
+    private final Stripe[] stripes;
+    private final Function<String, CameraSession> sessionFactory;
+    private final long idleTimeoutNanos;
+    private final ScheduledExecutorService evictor;
+    // Khóa chung cho việc tạo session: admission check và insert phải nguyên tử,
+    // nếu không 2 camera mới cùng lúc đều qua check dù chỉ còn chỗ cho 1
+    private final Object creationLock = new Object();
+
+    // Kiểm tra trước khi tạo session mới (ném exception để từ chối camera)
+    private volatile Consumer<String> admissionCheck;
+
+    /**
+     * @param stripeCount Số lock stripe (làm tròn lên lũy thừa của 2)
+     * @param idleTimeoutSeconds Thời gian idle tối đa trước khi session bị evict
+     * @param sessionFactory Hàm tạo session mới cho camera id
+     */
+    public CameraSessionRegistry(int stripeCount, long idleTimeoutSeconds,
+                                 Function<String, CameraSession> sessionFactory) {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        this.stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.sessionFactory = sessionFactory;
+        this.idleTimeoutNanos = TimeUnit.SECONDS.toNanos(idleTimeoutSeconds);
+
+        // Sweep định kỳ các session idle
+        long sweepPeriod = Math.max(1, idleTimeoutSeconds / 4);
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "camera-session-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        this.evictor.scheduleAtFixedRate(this::evictIdleSessions, sweepPeriod, sweepPeriod, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Đặt hàm kiểm tra chạy trước khi tạo session cho camera mới
+     * (chạy dưới creationLock, không giữ lock của stripe nên check được phép gọi snapshot())
+     */
+    public void setAdmissionCheck(Consumer<String> admissionCheck) {
+        this.admissionCheck = admissionCheck;
+    }
+
+    /**
+     * Lấy session của camera, tạo mới nếu chưa có
+     * Camera mới phải qua admission check, exception của check được ném lại cho caller
+     */
+    public CameraSession acquire(String cameraId) {
+        Stripe stripe = stripeFor(cameraId);
+        synchronized (stripe) {
+            CameraSession session = stripe.sessions.get(cameraId);
+            if (session != null) {
+                session.touch();
+                return session;
+            }
+        }
+
+        // Check có thể duyệt mọi stripe nên không chạy trong lock của stripe này,
+        // creationLock đảm bảo không session nào được tạo giữa lúc check và lúc insert
+        synchronized (creationLock) {
+            synchronized (stripe) {
+                CameraSession session = stripe.sessions.get(cameraId);
+                if (session != null) {
+                    session.touch();
+                    return session;
+                }
+            }
+
+            Consumer<String> check = admissionCheck;
+            if (check != null) {
+                check.accept(cameraId);
+            }
+
+            CameraSession session = sessionFactory.apply(cameraId);
+            session.touch();
+            synchronized (stripe) {
+                stripe.sessions.put(cameraId, session);
+            }
+            System.out.println("📷 New camera session: " + cameraId);
+            return session;
+        }
+    }
+
+    /**
+     * Lấy session nếu đã tồn tại (không tạo mới)
+     */
+    public CameraSession find(String cameraId) {
+        Stripe stripe = stripeFor(cameraId);
+        synchronized (stripe) {
+            return stripe.sessions.get(cameraId);
+        }
+    }
+
+    /**
+     * Xóa session của camera
+     */
+    public CameraSession remove(String cameraId) {
+        Stripe stripe = stripeFor(cameraId);
+        synchronized (stripe) {
+            return stripe.sessions.remove(cameraId);
+        }
+    }
+
+    /**
+     * Snapshot danh sách session hiện tại
+     */
+    public List<CameraSession> snapshot() {
+        List<CameraSession> result = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                result.addAll(stripe.sessions.values());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Số session đang tồn tại
+     */
+    public int size() {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                count += stripe.sessions.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Evict các session idle quá timeout
+     */
+    public void evictIdleSessions() {
+        long now = System.nanoTime();
+        List<CameraSession> evicted = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                Iterator<CameraSession> it = stripe.sessions.values().iterator();
+                while (it.hasNext()) {
+                    CameraSession session = it.next();
+                    if (session.isIdle(now, idleTimeoutNanos)) {
+                        it.remove();
+                        evicted.add(session);
+                    }
+                }
+            }
+        }
+        // toString đọc tracker nên phải giữ lock của session (frame cuối có thể vẫn đang tracking)
+        for (CameraSession session : evicted) {
+            String description;
+            synchronized (session) {
+                description = session.toString();
+            }
+            System.out.println("🧹 Evicted idle camera session: " + description);
+        }
+    }
+
+    private Stripe stripeFor(String cameraId) {
+        int h = cameraId.hashCode();
+        h ^= (h >>> 16);
+        return stripes[h & (stripes.length - 1)];
+    }
+
+    @Override
+    public void close() {
+        evictor.shutdownNow();
+    }
+}
@@ -0,0 +1,11 @@
+package org.example.counter;
+
+/**
+ * Node không còn đủ bộ nhớ cho camera mới (vượt cap của MemoryAccountant)
+ */
+public class CapacityExceededException extends RuntimeException {
+
+    public CapacityExceededException(String message) {
+        super(message);
+    }
+}
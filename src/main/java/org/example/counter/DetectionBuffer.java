@@ -0,0 +1,54 @@
+package org.example.counter;
+
+import java.util.Arrays;
+
+/**
+ * Danh sách detection dạng mảng song song: box + class + confidence
+ * Dùng lại giữa các frame, tracker đọc trực tiếp không cần tạo object Detection
+ */
+public class DetectionBuffer extends BoxBuffer {
+    String[] className;
+    float[] confidence;
+
+    public DetectionBuffer(int capacity) {
+        super(capacity);
+        this.className = new String[x.length];
+        this.confidence = new float[x.length];
+    }
+
+    /**
+     * Thêm 1 detection, trả về index
+     */
+    public int add(double boxX, double boxY, double boxWidth, double boxHeight,
+                   String detectionClass, double detectionConfidence) {
+        int i = add(boxX, boxY, boxWidth, boxHeight);
+        className[i] = detectionClass;
+        confidence[i] = (float) detectionConfidence;
+        return i;
+    }
+
+    public String getClassName(int i) {
+        return className[i];
+    }
+
+    public float getConfidence(int i) {
+        return confidence[i];
+    }
+
+    public float getCenterX(int i) {
+        return x[i] + w[i] / 2;
+    }
+
+    public float getCenterY(int i) {
+        return y[i] + h[i] / 2;
+    }
+
+    @Override
+    void ensureCapacity(int capacity) {
+        super.ensureCapacity(capacity);
+        if (className != null && className.length < x.length) {
+            className = Arrays.copyOf(className, x.length);
+            confidence = Arrays.copyOf(confidence, x.length);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.example.counter;
+
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.translate.TranslateException;
+
+import java.util.List;
+
+/**
+ * 1 instance detect (không thread-safe), PredictorPool cho mỗi thread mượn 1 instance
+ * Mặc định là Predictor của DJL, có thể thay bằng SyntheticDetector để chạy không cần model
+ */
+public interface Detector extends AutoCloseable {
+
+    /**
+     * Detect 1 batch ảnh, kết quả theo đúng thứ tự ảnh đầu vào
+     */
+    List<DetectedObjects> detect(List<Image> images) throws TranslateException;
+
+    @Override
+    void close();
+}
@@ -0,0 +1,40 @@
+package org.example.counter;
+
+import ai.djl.inference.Predictor;
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.translate.TranslateException;
+
+import java.util.List;
+
+/**
+ * Detector chạy Predictor của DJL (batch 1 frame dùng predict, tránh overhead batchPredict)
+ * Mỗi detector có TensorBuffers riêng, gắn vào thread trong lúc predict để translator dùng lại buffer.
+ * NDArray của mỗi lần predict thuộc NDManager của context lần đó và được giải phóng khi predict trả về
+ */
+public class DjlDetector implements Detector {
+    private final Predictor<Image, DetectedObjects> predictor;
+    private final TensorBuffers buffers = new TensorBuffers();
+
+    public DjlDetector(Predictor<Image, DetectedObjects> predictor) {
+        this.predictor = predictor;
+    }
+
+    @Override
+    public List<DetectedObjects> detect(List<Image> images) throws TranslateException {
+        TensorBuffers.bind(buffers);
+        try {
+            return images.size() == 1
+                    ? List.of(predictor.predict(images.get(0)))
+                    : predictor.batchPredict(images);
+        } finally {
+            TensorBuffers.unbind();
+        }
+    }
+
+    @Override
+    public void close() {
+        predictor.close();
+        buffers.release();
+    }
+}
@@ -0,0 +1,151 @@
+package org.example.counter;
+
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.output.DetectedObjects;
+
+import java.awt.image.BufferedImage;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Trạng thái của 1 frame khi đi qua các stage decode → infer → track
+ */
+public class FrameContext {
+    private final CameraSession session;
+    private final ByteBuffer data;
+    private final RawFrame rawFrame;
+
+    // Thời điểm frame vào pipeline (System.nanoTime), dùng cho metrics RESPONSE
+    private final long receivedNanos = System.nanoTime();
+
+    private Image image;
+    private BufferedImage pooledImage;
+    private int imageHeight;
+    private RegionOfInterest.Crop crop;
+    private DetectedObjects detectedObjects;
+    private boolean detectionSkipped;
+    private boolean motionSkipped;
+
+    /**
+     * @param data Frame đã encode, đọc trực tiếp từ buffer của gRPC (không copy)
+     */
+    public FrameContext(CameraSession session, ByteBuffer data) {
+        this.session = session;
+        this.data = data;
+        this.rawFrame = null;
+    }
+
+    /**
+     * @param rawFrame Frame pixel thô, không cần decode
+     */
+    public FrameContext(CameraSession session, RawFrame rawFrame) {
+        this.session = session;
+        this.data = rawFrame.getData();
+        this.rawFrame = rawFrame;
+    }
+
+    public CameraSession getSession() {
+        return session;
+    }
+
+    public long getReceivedNanos() {
+        return receivedNanos;
+    }
+
+    public ByteBuffer getData() {
+        return data;
+    }
+
+    /**
+     * Stream đọc dữ liệu frame, mỗi lần gọi là 1 view độc lập trên cùng buffer
+     */
+    public InputStream openStream() {
+        return new ByteBufferInputStream(data.duplicate());
+    }
+
+    /**
+     * Raw frame nếu camera gửi pixel thô, null nếu là ảnh đã encode
+     */
+    public RawFrame getRawFrame() {
+        return rawFrame;
+    }
+
+    /**
+     * Frame rỗng = camera báo kết thúc, tracker sẽ được reset
+     */
+    public boolean isEndOfStream() {
+        return rawFrame == null && !data.hasRemaining();
+    }
+
+    public Image getImage() {
+        return image;
+    }
+
+    public void setImage(Image image) {
+        this.image = image;
+        this.imageHeight = image.getHeight();
+    }
+
+    /**
+     * Ảnh decode lấy từ pool của JpegDecoder (null nếu ảnh không thuộc pool)
+     */
+    public BufferedImage getPooledImage() {
+        return pooledImage;
+    }
+
+    public void setPooledImage(BufferedImage pooledImage) {
+        this.pooledImage = pooledImage;
+    }
+
+    public int getImageHeight() {
+        return imageHeight;
+    }
+
+    /**
+     * Vùng crop đưa vào detector (null = cả frame)
+     */
+    public RegionOfInterest.Crop getCrop() {
+        return crop;
+    }
+
+    public void setCrop(RegionOfInterest.Crop crop) {
+        this.crop = crop;
+    }
+
+    /**
+     * Ảnh đưa vào detector: vùng crop nếu có ROI, ngược lại là cả frame
+     */
+    public Image getInputImage() {
+        return crop != null ? crop.apply(image) : image;
+    }
+
+    /**
+     * Frame không chạy detection, tracker chỉ tiến theo dự đoán chuyển động
+     */
+    public boolean isDetectionSkipped() {
+        return detectionSkipped;
+    }
+
+    public void setDetectionSkipped(boolean detectionSkipped) {
+        this.detectionSkipped = detectionSkipped;
+    }
+
+    /**
+     * Frame đã decode nhưng không đổi so với frame detect gần nhất, không chạy inference
+     */
+    public boolean isMotionSkipped() {
+        return motionSkipped;
+    }
+
+    public void setMotionSkipped(boolean motionSkipped) {
+        this.motionSkipped = motionSkipped;
+    }
+
+    public DetectedObjects getDetectedObjects() {
+        return detectedObjects;
+    }
+
+    public void setDetectedObjects(DetectedObjects detectedObjects) {
+        this.detectedObjects = detectedObjects;
+    }
+}
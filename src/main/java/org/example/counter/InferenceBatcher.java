@@ -0,0 +1,170 @@
+package org.example.counter;
+
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.translate.TranslateException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gom frame từ nhiều camera thành batch rồi chạy Detector.detect (Predictor.batchPredict)
+ * Batch được flush khi đủ maxBatchSize hoặc khi frame đầu tiên đã chờ quá maxWait
+ * Kết quả được trả về đúng future của từng frame
+ */
+public class InferenceBatcher implements AutoCloseable {
+
+    private static final class PendingFrame {
+        private final Image image;
+        private final CompletableFuture<DetectedObjects> result = new CompletableFuture<>();
+
+        private PendingFrame(Image image) {
+            this.image = image;
+        }
+    }
+
+    private final PredictorPool predictorPool;
+    private final BlockingQueue<PendingFrame> queue;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    /**
+     * @param predictorPool Pool predictor, mỗi worker mượn 1 predictor cho mỗi batch
+     * @param maxBatchSize Số frame tối đa trong 1 batch
+     * @param maxWaitMicros Thời gian chờ tối đa để gom batch (micro giây)
+     */
+    public InferenceBatcher(PredictorPool predictorPool, int maxBatchSize, long maxWaitMicros) {
+        this.predictorPool = predictorPool;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+        this.queue = new ArrayBlockingQueue<>(this.maxBatchSize * predictorPool.size() * 4);
+
+        // Mỗi predictor có 1 worker gom batch
+        for (int i = 0; i < predictorPool.size(); i++) {
+            Thread worker = new Thread(this::runWorker, "inference-batcher-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * Đưa frame vào hàng đợi batch, chờ nếu hàng đợi đầy (backpressure)
+     */
+    public CompletableFuture<DetectedObjects> submit(Image image) throws InterruptedException {
+        PendingFrame frame = new PendingFrame(image);
+        queue.put(frame);
+        return frame.result;
+    }
+
+    /**
+     * Submit frame và chờ kết quả
+     */
+    public DetectedObjects predict(Image image) throws TranslateException {
+        try {
+            return submit(image).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TranslateException("Interrupted while waiting for batched inference", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TranslateException) {
+                throw (TranslateException) e.getCause();
+            }
+            throw new TranslateException("Batched inference failed", e.getCause());
+        }
+    }
+
+    private void runWorker() {
+        List<PendingFrame> batch = new ArrayList<>(maxBatchSize);
+        List<Image> images = new ArrayList<>(maxBatchSize);
+
+        while (running) {
+            try {
+                collectBatch(batch);
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            for (PendingFrame frame : batch) {
+                images.add(frame.image);
+            }
+            runBatch(batch, images);
+            batch.clear();
+            images.clear();
+        }
+    }
+
+    /**
+     * Chờ frame đầu tiên, sau đó gom thêm cho tới khi đủ batch hoặc hết deadline
+     */
+    private void collectBatch(List<PendingFrame> batch) throws InterruptedException {
+        batch.add(queue.take());
+        long deadline = System.nanoTime() + maxWaitNanos;
+
+        while (batch.size() < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            PendingFrame next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+            queue.drainTo(batch, maxBatchSize - batch.size());
+        }
+    }
+
+    private void runBatch(List<PendingFrame> batch, List<Image> images) {
+        Detector predictor = null;
+        try {
+            predictor = predictorPool.borrow();
+            List<DetectedObjects> results = predictor.detect(images);
+
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(results.get(i));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failBatch(batch, e);
+        } catch (Exception e) {
+            failBatch(batch, e);
+        } finally {
+            if (predictor != null) {
+                predictorPool.release(predictor);
+            }
+        }
+    }
+
+    private void failBatch(List<PendingFrame> batch, Throwable error) {
+        for (PendingFrame frame : batch) {
+            frame.result.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * Số frame đang chờ trong hàng đợi
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        PendingFrame frame;
+        while ((frame = queue.poll()) != null) {
+            frame.result.completeExceptionally(new IllegalStateException("InferenceBatcher closed"));
+        }
+    }
+}
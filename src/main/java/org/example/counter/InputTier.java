@@ -0,0 +1,119 @@
+package org.example.counter;
+
+import ai.djl.MalformedModelException;
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.repository.zoo.ModelNotFoundException;
+import ai.djl.repository.zoo.ZooModel;
+import ai.djl.translate.TranslateException;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 1 mức kích thước ảnh đầu vào của detector (vd 320/416/640)
+ * Mỗi tier có translator, pool predictor và batcher riêng (batch chỉ gom ảnh cùng kích thước),
+ * weights của model dùng chung giữa các tier
+ *
+ * Chi phí tính theo FLOPs của YOLOv5s, tỉ lệ với diện tích ảnh đầu vào
+ */
+public class InputTier implements AutoCloseable {
+
+    // YOLOv5s: ~16.5 GFLOPs mỗi ảnh 640x640
+    private static final double REFERENCE_GFLOPS = 16.5;
+    private static final int REFERENCE_SIZE = ModelRegistry.DEFAULT_INPUT_SIZE;
+
+    private final int inputSize;
+    private final PredictorPool predictorPool;
+    private final InferenceBatcher batcher;
+    private final AtomicLong frames = new AtomicLong();
+
+    private InputTier(int inputSize, PredictorPool predictorPool, int maxBatchSize, long maxWaitMicros) {
+        this.inputSize = inputSize;
+        this.predictorPool = predictorPool;
+        this.batcher = new InferenceBatcher(predictorPool, maxBatchSize, maxWaitMicros);
+    }
+
+    /**
+     * Tier chạy YOLO model (model dùng chung qua ModelRegistry, translator theo input size của tier)
+     */
+    public static InputTier load(int inputSize, int predictors, int maxBatchSize, long maxWaitMicros)
+            throws ModelNotFoundException, MalformedModelException, IOException {
+        ZooModel<Image, DetectedObjects> model = ModelRegistry.getDefault();
+        return new InputTier(inputSize,
+                new PredictorPool(() -> new DjlDetector(model.newPredictor(ModelRegistry.newTranslator(inputSize))),
+                        predictors),
+                maxBatchSize, maxWaitMicros);
+    }
+
+    /**
+     * Tier chạy SyntheticDetector, thời gian infer giả lập tỉ lệ với chi phí của tier
+     */
+    public static InputTier synthetic(int inputSize, int predictors, int maxBatchSize, long maxWaitMicros) {
+        double cost = relativeCost(inputSize);
+        return new InputTier(inputSize,
+                new PredictorPool(() -> SyntheticDetector.scaled(cost), predictors), maxBatchSize, maxWaitMicros);
+    }
+
+    /**
+     * Chi phí so với ảnh 640x640
+     */
+    public static double relativeCost(int inputSize) {
+        double ratio = (double) inputSize / REFERENCE_SIZE;
+        return ratio * ratio;
+    }
+
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    public PredictorPool getPredictorPool() {
+        return predictorPool;
+    }
+
+    public InferenceBatcher getBatcher() {
+        return batcher;
+    }
+
+    public void recordFrame() {
+        frames.incrementAndGet();
+    }
+
+    /**
+     * Số frame đã infer ở tier này
+     */
+    public long getFrames() {
+        return frames.get();
+    }
+
+    public double getRelativeCost() {
+        return relativeCost(inputSize);
+    }
+
+    public double getGflopsPerFrame() {
+        return REFERENCE_GFLOPS * getRelativeCost();
+    }
+
+    /**
+     * Tổng GFLOPs đã dùng cho các frame của tier
+     */
+    public double getTotalGflops() {
+        return getGflopsPerFrame() * frames.get();
+    }
+
+    public void warmUp(Image image, int runs, int batchSize) throws TranslateException {
+        predictorPool.warmUp(image, runs, batchSize);
+    }
+
+    @Override
+    public void close() {
+        batcher.close();
+        predictorPool.close();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("InputTier[%dx%d, %d predictors, %.2f GFLOPs/frame]",
+                inputSize, inputSize, predictorPool.size(), getGflopsPerFrame());
+    }
+}
@@ -0,0 +1,47 @@
+package org.example.counter;
+
+/**
+ * Tính ma trận IoU track × detection trong 1 lượt
+ * Dùng kernel SIMD (jdk.incubator.vector) nếu JVM được chạy với --add-modules jdk.incubator.vector,
+ * ngược lại dùng vòng lặp scalar. Hai cách cho kết quả giống nhau từng bit (cùng thứ tự phép tính float)
+ */
+public final class IouMatrix {
+
+    private static final boolean VECTOR_AVAILABLE =
+            ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+                    && !Boolean.getBoolean("camera.iou.scalar");
+
+    private IouMatrix() {
+    }
+
+    /**
+     * Kernel SIMD có đang được dùng không
+     */
+    public static boolean isVectorized() {
+        return VECTOR_AVAILABLE;
+    }
+
+    /**
+     * Ghi IoU của (track t, detection d) vào out[t * detections.size() + d]
+     */
+    public static void compute(BoxBuffer tracks, BoxBuffer detections, float[] out) {
+        if (VECTOR_AVAILABLE) {
+            VectorIouKernel.compute(tracks, detections, out);
+        } else {
+            computeScalar(tracks, detections, out);
+        }
+    }
+
+    /**
+     * Bản scalar (fallback và dùng để đối chiếu với kernel SIMD)
+     */
+    public static void computeScalar(BoxBuffer tracks, BoxBuffer detections, float[] out) {
+        int detectionCount = detections.size();
+        for (int t = 0; t < tracks.size(); t++) {
+            int row = t * detectionCount;
+            for (int d = 0; d < detectionCount; d++) {
+                out[row + d] = BoxBuffer.iou(tracks, t, detections, d);
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.example.counter;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decode JPEG có subsampling: camera 4K chỉ decode 1/N pixel, vừa đủ lớn hơn ảnh đầu vào detector
+ * (detector resize về input size nên decode full resolution là lãng phí)
+ *
+ * Ảnh đích lấy từ pool theo kích thước, trả lại bằng {@link #release(BufferedImage)} khi frame xử lý xong
+ * Mỗi decode thread giữ 1 ImageReader riêng (ImageReader không thread-safe)
+ */
+public class JpegDecoder {
+
+    private final ThreadLocal<ImageReader> readers = ThreadLocal.withInitial(JpegDecoder::newReader);
+    private final Map<Long, ArrayBlockingQueue<BufferedImage>> pool = new ConcurrentHashMap<>();
+    private final int maxPooledPerSize;
+
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+
+    /**
+     * @param maxPooledPerSize Số ảnh tối đa giữ lại cho mỗi kích thước (nên >= số frame đang xử lý cùng lúc)
+     */
+    public JpegDecoder(int maxPooledPerSize) {
+        this.maxPooledPerSize = Math.max(1, maxPooledPerSize);
+    }
+
+    /**
+     * Buffer có phải JPEG không (SOI marker 0xFFD8)
+     */
+    public static boolean isJpeg(ByteBuffer data) {
+        int p = data.position();
+        return data.remaining() > 2 && (data.get(p) & 0xFF) == 0xFF && (data.get(p + 1) & 0xFF) == 0xD8;
+    }
+
+    /**
+     * Decode JPEG với hệ số subsampling lớn nhất mà ảnh vẫn >= minWidth x minHeight
+     *
+     * @param data JPEG đã encode (không thay đổi position của buffer)
+     * @param minWidth Chiều rộng tối thiểu của ảnh sau decode
+     * @param minHeight Chiều cao tối thiểu của ảnh sau decode
+     */
+    public BufferedImage decode(ByteBuffer data, int minWidth, int minHeight) throws IOException {
+        ImageReader reader = readers.get();
+        try (ImageInputStream input = new MemoryCacheImageInputStream(new ByteBufferInputStream(data.duplicate()))) {
+            reader.setInput(input, true, true);
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            int factor = Math.max(1, Math.min(width / Math.max(1, minWidth), height / Math.max(1, minHeight)));
+            int outWidth = (width + factor - 1) / factor;
+            int outHeight = (height + factor - 1) / factor;
+
+            ImageReadParam param = reader.getDefaultReadParam();
+            if (factor > 1) {
+                param.setSourceSubsampling(factor, factor, 0, 0);
+            }
+            ImageTypeSpecifier type = reader.getImageTypes(0).next();
+            BufferedImage destination = acquire(type, outWidth, outHeight);
+            param.setDestination(destination);
+            try {
+                return reader.read(0, param);
+            } catch (IOException | RuntimeException e) {
+                // JPEG hỏng: frame không dùng ảnh này nữa, trả về pool để không mất ảnh
+                release(destination);
+                throw e;
+            }
+        } finally {
+            reader.setInput(null);
+        }
+    }
+
+    /**
+     * Trả ảnh về pool sau khi detector đã dùng xong (ảnh không được truy cập sau đó)
+     */
+    public void release(BufferedImage image) {
+        int type = image.getType();
+        if (type == BufferedImage.TYPE_CUSTOM) {
+            return;
+        }
+        ArrayBlockingQueue<BufferedImage> queue = pool.computeIfAbsent(key(type, image.getWidth(), image.getHeight()),
+                k -> new ArrayBlockingQueue<>(maxPooledPerSize));
+        queue.offer(image);
+    }
+
+    private BufferedImage acquire(ImageTypeSpecifier type, int width, int height) {
+        int imageType = type.getBufferedImageType();
+        if (imageType != BufferedImage.TYPE_CUSTOM) {
+            ArrayBlockingQueue<BufferedImage> queue = pool.get(key(imageType, width, height));
+            BufferedImage image = queue != null ? queue.poll() : null;
+            if (image != null) {
+                reused.incrementAndGet();
+                return image;
+            }
+        }
+        allocated.incrementAndGet();
+        BufferedImage image = type.createBufferedImage(width, height);
+        allocatedBytes.addAndGet(MemoryAccountant.imageBytes(image));
+        return image;
+    }
+
+    private static long key(int type, int width, int height) {
+        return ((long) width << 40) | ((long) height << 16) | type;
+    }
+
+    private static ImageReader newReader() {
+        Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("jpeg");
+        if (!readers.hasNext()) {
+            throw new IllegalStateException("No JPEG ImageReader available");
+        }
+        return readers.next();
+    }
+
+    /**
+     * Số ảnh đã cấp phát mới (không lấy được từ pool)
+     */
+    public long getAllocatedCount() {
+        return allocated.get();
+    }
+
+    /**
+     * Tổng byte pixel của các ảnh đã cấp phát (giới hạn trên của bộ nhớ pool + ảnh đang dùng)
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    /**
+     * Số lần dùng lại ảnh từ pool
+     */
+    public long getReusedCount() {
+        return reused.get();
+    }
+}
@@ -0,0 +1,134 @@
+package org.example.counter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram độ trễ kiểu HDR: bucket log-linear theo microsecond, sai số tương đối ~3%
+ * Ghi lock-free (1 phép cộng atomic vào bucket), không cấp phát khi record
+ *
+ * Giá trị < 64 µs mỗi µs 1 bucket, trên đó mỗi khoảng [2^k, 2^(k+1)) chia 32 bucket đều nhau,
+ * giá trị lớn hơn ~134 s bị gom vào bucket cuối
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 6;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int HALF_COUNT = SUB_COUNT / 2;
+    private static final int MAX_MAGNITUDE = 27;
+    private static final long MAX_VALUE = (1L << MAX_MAGNITUDE) - 1;
+    private static final int BUCKET_COUNT = SUB_COUNT + (MAX_MAGNITUDE - SUB_BITS) * HALF_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Ghi 1 giá trị tính từ System.nanoTime() lúc bắt đầu
+     */
+    public void recordSince(long startNanos) {
+        recordNanos(System.nanoTime() - startNanos);
+    }
+
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(bucketIndex(Math.min(micros, MAX_VALUE)));
+        totalCount.incrementAndGet();
+        totalMicros.addAndGet(micros);
+        maxMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    static int bucketIndex(long micros) {
+        if (micros < SUB_COUNT) {
+            return (int) micros;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BITS + 1;
+        int sub = (int) (micros >>> shift);
+        return SUB_COUNT + (shift - 1) * HALF_COUNT + (sub - HALF_COUNT);
+    }
+
+    /**
+     * Giá trị đại diện (điểm giữa) của bucket
+     */
+    static long bucketValue(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int k = index - SUB_COUNT;
+        int shift = k / HALF_COUNT + 1;
+        long sub = HALF_COUNT + k % HALF_COUNT;
+        long lower = sub << shift;
+        return lower + ((1L << shift) >> 1);
+    }
+
+    /**
+     * Chụp lại phân bố hiện tại
+     *
+     * @param reset Xóa dữ liệu sau khi chụp (mỗi lần scrape là 1 khoảng thời gian riêng)
+     */
+    public Snapshot snapshot(boolean reset) {
+        long[] copy = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = reset ? counts.getAndSet(i, 0) : counts.get(i);
+            count += copy[i];
+        }
+        long sum = reset ? totalMicros.getAndSet(0) : totalMicros.get();
+        long max = reset ? maxMicros.getAndSet(0) : maxMicros.get();
+        if (reset) {
+            totalCount.set(0);
+        }
+        return new Snapshot(copy, count, sum, max);
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * Phân bố đã chụp, tính percentile trên bản copy
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sumMicros;
+        private final long maxMicros;
+
+        private Snapshot(long[] counts, long count, long sumMicros, long maxMicros) {
+            this.counts = counts;
+            this.count = count;
+            this.sumMicros = sumMicros;
+            this.maxMicros = maxMicros;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Percentile (0-100) theo microsecond, 0 nếu chưa có giá trị
+         */
+        public long percentileMicros(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(bucketValue(i), maxMicros);
+                }
+            }
+            return maxMicros;
+        }
+
+        public double meanMicros() {
+            return count == 0 ? 0 : (double) sumMicros / count;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package org.example.counter;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Kế toán bộ nhớ của node: model (PyTorch), buffer inference, pool ảnh decode và từng camera session
+ * Camera mới chỉ được nhận khi bộ nhớ dự kiến sau khi thêm vẫn dưới cap của node
+ * (từ chối sớm thay vì để process bị OOM-kill)
+ *
+ * Bộ nhớ dự kiến = max(RSS đo được, tổng đã kế toán) + phần dành cho camera mới,
+ * phần dành cho camera mới = max(mức tối thiểu cấu hình, trung bình các camera hiện có)
+ */
+public class MemoryAccountant {
+
+    private final long maxBytes;
+    private final long sessionReserveBytes;
+    private final AtomicLong refusedSessions = new AtomicLong();
+
+    /**
+     * @param maxBytes Cap bộ nhớ của node (<= 0 = không giới hạn)
+     * @param sessionReserveBytes Bộ nhớ tối thiểu dành cho 1 camera mới
+     */
+    public MemoryAccountant(long maxBytes, long sessionReserveBytes) {
+        this.maxBytes = maxBytes;
+        this.sessionReserveBytes = Math.max(0, sessionReserveBytes);
+    }
+
+    /**
+     * Kiểm tra có nhận thêm camera được không, ném CapacityExceededException nếu vượt cap
+     *
+     * @param sessions Các session đang tồn tại
+     * @param sharedBytes Bộ nhớ dùng chung đã kế toán (pool ảnh decode...)
+     */
+    public synchronized void admit(String cameraId, Collection<CameraSession> sessions, long sharedBytes) {
+        if (maxBytes <= 0) {
+            return;
+        }
+        Usage usage = usage(sessions, sharedBytes);
+        long reserve = Math.max(sessionReserveBytes,
+                sessions.isEmpty() ? 0 : usage.getSessionBytes() / sessions.size());
+        long projected = usage.getEffectiveBytes() + reserve;
+        if (projected > maxBytes) {
+            refusedSessions.incrementAndGet();
+            System.err.println("⛔ Refusing camera session " + cameraId + ": projected " + (projected >> 20)
+                    + " MB > cap " + (maxBytes >> 20) + " MB (" + usage + ")");
+            throw new CapacityExceededException(String.format(
+                    "Node memory cap reached: %d MB projected for camera %s, cap %d MB (%d cameras)",
+                    projected >> 20, cameraId, maxBytes >> 20, sessions.size()));
+        }
+    }
+
+    /**
+     * Bộ nhớ hiện tại theo từng nguồn
+     */
+    public Usage usage(Collection<CameraSession> sessions, long sharedBytes) {
+        long sessionHeap = 0;
+        long sessionOffHeap = 0;
+        for (CameraSession session : sessions) {
+            if (session.hasFrameSize()) {
+                sessionHeap += session.estimateHeapBytes();
+                sessionOffHeap += session.estimateOffHeapBytes();
+            } else {
+                // Camera chưa có frame nào: tính phần dành sẵn để các camera mới cùng lúc không vượt cap
+                sessionHeap += Math.max(sessionReserveBytes, session.estimateHeapBytes());
+            }
+        }
+        return new Usage(ModelRegistry.getModelBytes(), TensorBuffers.getTotalBytes(), sharedBytes,
+                sessionHeap, sessionOffHeap, NativeMemory.snapshot());
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getRefusedSessions() {
+        return refusedSessions.get();
+    }
+
+    /**
+     * Số byte pixel của ảnh (kích thước data buffer của raster)
+     */
+    public static long imageBytes(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    public static final class Usage {
+        private final long modelBytes;
+        private final long inferenceBufferBytes;
+        private final long sharedBytes;
+        private final long sessionHeapBytes;
+        private final long sessionOffHeapBytes;
+        private final NativeMemory.Snapshot process;
+
+        private Usage(long modelBytes, long inferenceBufferBytes, long sharedBytes,
+                      long sessionHeapBytes, long sessionOffHeapBytes, NativeMemory.Snapshot process) {
+            this.modelBytes = modelBytes;
+            this.inferenceBufferBytes = inferenceBufferBytes;
+            this.sharedBytes = sharedBytes;
+            this.sessionHeapBytes = sessionHeapBytes;
+            this.sessionOffHeapBytes = sessionOffHeapBytes;
+            this.process = process;
+        }
+
+        /**
+         * RSS tăng thêm khi load model (gồm khởi tạo PyTorch engine)
+         */
+        public long getModelBytes() {
+            return modelBytes;
+        }
+
+        public long getInferenceBufferBytes() {
+            return inferenceBufferBytes;
+        }
+
+        public long getSharedBytes() {
+            return sharedBytes;
+        }
+
+        public long getSessionHeapBytes() {
+            return sessionHeapBytes;
+        }
+
+        public long getSessionOffHeapBytes() {
+            return sessionOffHeapBytes;
+        }
+
+        public long getSessionBytes() {
+            return sessionHeapBytes + sessionOffHeapBytes;
+        }
+
+        /**
+         * Tổng các phần đã kế toán
+         */
+        public long getAccountedBytes() {
+            return modelBytes + inferenceBufferBytes + sharedBytes + getSessionBytes();
+        }
+
+        /**
+         * Bộ nhớ dùng để so với cap: RSS thật nếu đọc được và lớn hơn phần đã kế toán
+         */
+        public long getEffectiveBytes() {
+            return Math.max(process.getResidentBytes(), getAccountedBytes());
+        }
+
+        public NativeMemory.Snapshot getProcess() {
+            return process;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("model %d MB | inference buffers %d MB | decode pool %d MB | sessions %d MB heap + %d MB off-heap | %s",
+                    modelBytes >> 20, inferenceBufferBytes >> 20, sharedBytes >> 20,
+                    sessionHeapBytes >> 20, sessionOffHeapBytes >> 20, process);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.example.counter;
+
+import ai.djl.Application;
+import ai.djl.MalformedModelException;
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.modality.cv.translator.YoloV5Translator;
+import ai.djl.repository.zoo.Criteria;
+import ai.djl.repository.zoo.ModelNotFoundException;
+import ai.djl.repository.zoo.ZooModel;
+import ai.djl.training.util.ProgressBar;
+import ai.djl.translate.Translator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Model detection dùng chung trong process: mỗi model chỉ load 1 lần, mọi service dùng lại
+ * Model thuộc registry, service không tự close model (đóng hết bằng {@link #closeAll()} khi shutdown)
+ * Các tier input size dùng chung weights, mỗi predictor có translator theo kích thước riêng ({@link #newTranslator(int)})
+ *
+ *   -Dcamera.model.path=/models/yolov5s  load từ thư mục/file local (không tải qua mạng)
+ *   -Dcamera.model.url=djl://...         model zoo URL (mặc định yolov5s, DJL cache trong DJL_CACHE_DIR)
+ *   -Dcamera.model.translator=zoo        dùng translator 80 class của model zoo thay vì {@link VehicleDetectionTranslator}
+ */
+public final class ModelRegistry {
+
+    public static final String DEFAULT_MODEL_URL = "djl://ai.djl.pytorch/yolov5s";
+
+    // Kích thước ảnh đầu vào mặc định của yolov5s trong model zoo
+    public static final int DEFAULT_INPUT_SIZE = 640;
+
+    // Translator chỉ decode vehicle (mặc định) hoặc translator của model zoo
+    private static final boolean VEHICLE_TRANSLATOR =
+            !"zoo".equalsIgnoreCase(System.getProperty("camera.model.translator", "vehicle"));
+    private static final double NMS_THRESHOLD = Double.parseDouble(System.getProperty("camera.model.nmsThreshold", "0.45"));
+
+    private static final Map<String, ZooModel<Image, DetectedObjects>> MODELS = new HashMap<>();
+
+    // RSS tăng thêm khi load từng model (weights + khởi tạo engine), dùng cho MemoryAccountant
+    private static final Map<String, Long> MODEL_BYTES = new HashMap<>();
+
+    private ModelRegistry() {
+    }
+
+    /**
+     * Model mặc định theo cấu hình (-Dcamera.model.path hoặc -Dcamera.model.url)
+     */
+    public static ZooModel<Image, DetectedObjects> getDefault()
+            throws ModelNotFoundException, MalformedModelException, IOException {
+        String path = System.getProperty("camera.model.path");
+        if (path != null && !path.isBlank()) {
+            return get(path);
+        }
+        return get(System.getProperty("camera.model.url", DEFAULT_MODEL_URL));
+    }
+
+    /**
+     * Lấy model đã load, load lần đầu nếu chưa có
+     * Translator mặc định của model dùng input size {@link #DEFAULT_INPUT_SIZE}
+     *
+     * @param location Model zoo URL (djl://, https://, file://) hoặc đường dẫn local
+     */
+    public static synchronized ZooModel<Image, DetectedObjects> get(String location)
+            throws ModelNotFoundException, MalformedModelException, IOException {
+        ZooModel<Image, DetectedObjects> model = MODELS.get(location);
+        if (model == null) {
+            long before = NativeMemory.snapshot().getResidentBytes();
+            model = load(location);
+            MODELS.put(location, model);
+            long after = NativeMemory.snapshot().getResidentBytes();
+            MODEL_BYTES.put(location, before < 0 || after < 0 ? 0 : Math.max(0, after - before));
+        }
+        return model;
+    }
+
+    /**
+     * Translator resize ảnh về inputSize x inputSize, dùng cho model.newPredictor(translator)
+     * Mỗi predictor nên có translator riêng
+     *
+     * @param inputSize Cạnh ảnh đầu vào (bội số của 32)
+     */
+    public static Translator<Image, DetectedObjects> newTranslator(int inputSize) {
+        if (inputSize <= 0 || inputSize % 32 != 0) {
+            throw new IllegalArgumentException("Input size must be a positive multiple of 32: " + inputSize);
+        }
+        if (VEHICLE_TRANSLATOR) {
+            return new VehicleDetectionTranslator(inputSize, inputSize,
+                    VehicleFilter.CONFIDENCE_THRESHOLD, NMS_THRESHOLD);
+        }
+        // Giống argument của yolov5s trong model zoo, chỉ đổi kích thước ảnh
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put("width", inputSize);
+        arguments.put("height", inputSize);
+        arguments.put("resize", true);
+        arguments.put("rescale", true);
+        arguments.put("optApplyRatio", true);
+        arguments.put("threshold", 0.4);
+        arguments.put("nmsThreshold", NMS_THRESHOLD);
+        return YoloV5Translator.builder(arguments).build();
+    }
+
+    private static ZooModel<Image, DetectedObjects> load(String location)
+            throws ModelNotFoundException, MalformedModelException, IOException {
+        long start = System.currentTimeMillis();
+
+        Criteria.Builder<Image, DetectedObjects> builder = Criteria.builder()
+                .optApplication(Application.CV.OBJECT_DETECTION)
+                .setTypes(Image.class, DetectedObjects.class)
+                .optEngine("PyTorch")
+                .optProgress(new ProgressBar());
+        if (VEHICLE_TRANSLATOR) {
+            builder.optTranslator(newTranslator(DEFAULT_INPUT_SIZE));
+        }
+
+        Path localPath = location.contains("://") ? null : Paths.get(location);
+        if (localPath != null && Files.exists(localPath)) {
+            builder.optModelPath(localPath);
+        } else if (localPath != null) {
+            throw new ModelNotFoundException("Model path not found: " + localPath.toAbsolutePath());
+        } else {
+            builder.optModelUrls(location);
+        }
+
+        ZooModel<Image, DetectedObjects> model = builder.build().loadModel();
+        System.out.println("📦 Model loaded: " + location
+                + (VEHICLE_TRANSLATOR ? " (vehicle-only translator)" : "") + " in "
+                + (System.currentTimeMillis() - start) + " ms");
+        return model;
+    }
+
+    /**
+     * Tổng bộ nhớ của các model đã load (đo bằng RSS lúc load, 0 nếu không đọc được RSS)
+     */
+    public static synchronized long getModelBytes() {
+        long total = 0;
+        for (long bytes : MODEL_BYTES.values()) {
+            total += bytes;
+        }
+        return total;
+    }
+
+    /**
+     * Đóng tất cả model đã load (gọi khi process shutdown)
+     */
+    public static synchronized void closeAll() {
+        for (ZooModel<Image, DetectedObjects> model : MODELS.values()) {
+            model.close();
+        }
+        MODELS.clear();
+        MODEL_BYTES.clear();
+    }
+}
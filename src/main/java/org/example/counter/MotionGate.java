@@ -0,0 +1,143 @@
+package org.example.counter;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Bỏ qua inference khi frame gần như không đổi (ban đêm, xe đứng yên khi tắc đường)
+ * So sánh thumbnail độ sáng (vd 32 x 18) của frame mới với frame infer gần nhất, chỉ trong dải counting line
+ *
+ * So với frame infer gần nhất (không phải frame liền trước) để thay đổi chậm qua nhiều frame vẫn được phát hiện
+ */
+public class MotionGate {
+    // Số điểm lấy mẫu mỗi cạnh của 1 ô thumbnail
+    private static final int SAMPLES_PER_CELL = 2;
+
+    private final int thumbWidth;
+    private final int pixelThreshold;
+    private final double changedRatio;
+    private final int maxSkippedFrames;
+
+    // Thumbnail của frame infer gần nhất (keyframe) và buffer cho frame hiện tại
+    private int[] keyframe;
+    private int[] current;
+    private int thumbHeight;
+    private int frameWidth;
+    private int frameHeight;
+    private int skippedFrames;
+    private long totalSkipped;
+
+    /**
+     * @param thumbWidth Chiều rộng thumbnail (chiều cao theo tỉ lệ frame)
+     * @param pixelThreshold Chênh lệch độ sáng (0-255) để 1 ô được coi là thay đổi
+     * @param changedRatio Tỉ lệ ô thay đổi trong dải tối thiểu để chạy inference
+     * @param maxSkippedFrames Số frame liên tiếp tối đa được bỏ qua (sau đó bắt buộc infer)
+     */
+    public MotionGate(int thumbWidth, int pixelThreshold, double changedRatio, int maxSkippedFrames) {
+        this.thumbWidth = Math.max(4, thumbWidth);
+        this.pixelThreshold = pixelThreshold;
+        this.changedRatio = changedRatio;
+        this.maxSkippedFrames = maxSkippedFrames;
+    }
+
+    /**
+     * Frame có cần chạy inference không, frame được infer trở thành keyframe mới
+     *
+     * @param bandTop Dòng đầu của dải counting line (pixel)
+     * @param bandHeight Chiều cao dải (pixel)
+     */
+    public synchronized boolean shouldInfer(BufferedImage image, int bandTop, int bandHeight) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (keyframe == null || width != frameWidth || height != frameHeight) {
+            resize(width, height);
+            thumbnail(image, keyframe);
+            skippedFrames = 0;
+            return true;
+        }
+
+        thumbnail(image, current);
+
+        int firstRow = Math.max(0, bandTop * thumbHeight / height);
+        int lastRow = Math.min(thumbHeight, Math.max(firstRow + 1, (bandTop + bandHeight) * thumbHeight / height));
+        int changed = 0;
+        for (int i = firstRow * thumbWidth; i < lastRow * thumbWidth; i++) {
+            if (Math.abs(current[i] - keyframe[i]) > pixelThreshold) {
+                changed++;
+            }
+        }
+
+        int cells = (lastRow - firstRow) * thumbWidth;
+        if (changed > cells * changedRatio || skippedFrames >= maxSkippedFrames) {
+            int[] swap = keyframe;
+            keyframe = current;
+            current = swap;
+            skippedFrames = 0;
+            return true;
+        }
+        skippedFrames++;
+        totalSkipped++;
+        return false;
+    }
+
+    /**
+     * Tổng số frame đã bỏ qua inference
+     */
+    public synchronized long getTotalSkipped() {
+        return totalSkipped;
+    }
+
+    /**
+     * Quên keyframe (camera bắt đầu stream mới)
+     */
+    public synchronized void reset() {
+        keyframe = null;
+        skippedFrames = 0;
+    }
+
+    private void resize(int width, int height) {
+        frameWidth = width;
+        frameHeight = height;
+        thumbHeight = Math.max(1, Math.round((float) thumbWidth * height / width));
+        keyframe = new int[thumbWidth * thumbHeight];
+        current = new int[thumbWidth * thumbHeight];
+    }
+
+    /**
+     * Độ sáng trung bình của mỗi ô (lấy mẫu thưa, không đọc hết ảnh)
+     */
+    private void thumbnail(BufferedImage image, int[] out) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getType() == BufferedImage.TYPE_INT_RGB
+                && image.getRaster().getDataBuffer() instanceof DataBufferInt buffer
+                && image.getRaster().getSampleModelTranslateX() == 0
+                ? buffer.getData()
+                : null;
+
+        for (int ty = 0; ty < thumbHeight; ty++) {
+            for (int tx = 0; tx < thumbWidth; tx++) {
+                int sum = 0;
+                for (int sy = 0; sy < SAMPLES_PER_CELL; sy++) {
+                    int y = (int) ((ty + (sy + 0.5) / SAMPLES_PER_CELL) * height / thumbHeight);
+                    for (int sx = 0; sx < SAMPLES_PER_CELL; sx++) {
+                        int x = (int) ((tx + (sx + 0.5) / SAMPLES_PER_CELL) * width / thumbWidth);
+                        int rgb = pixels != null ? pixels[y * width + x] : image.getRGB(x, y);
+                        sum += luminance(rgb);
+                    }
+                }
+                out[ty * thumbWidth + tx] = sum / (SAMPLES_PER_CELL * SAMPLES_PER_CELL);
+            }
+        }
+    }
+
+    /**
+     * Độ sáng BT.601 dạng số nguyên (0-255)
+     */
+    private static int luminance(int rgb) {
+        int r = (rgb >> 16) & 0xFF;
+        int g = (rgb >> 8) & 0xFF;
+        int b = rgb & 0xFF;
+        return (77 * r + 150 * g + 29 * b) >> 8;
+    }
+}
@@ -0,0 +1,98 @@
+package org.example.counter;
+
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Số liệu bộ nhớ của process: heap, direct buffer, buffer tensor của predictor và RSS
+ * (RSS gồm cả bộ nhớ native của PyTorch, không có cách đọc riêng từ Java)
+ */
+public final class NativeMemory {
+
+    private static final Path PROC_STATUS = Paths.get("/proc/self/status");
+
+    private NativeMemory() {
+    }
+
+    public static Snapshot snapshot() {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        long direct = 0;
+        List<BufferPoolMXBean> pools = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class);
+        for (BufferPoolMXBean pool : pools) {
+            if ("direct".equals(pool.getName())) {
+                direct = pool.getMemoryUsed();
+            }
+        }
+        return new Snapshot(heap.getUsed(), direct, TensorBuffers.getTotalBytes(), residentBytes());
+    }
+
+    /**
+     * VmRSS từ /proc/self/status, -1 nếu không đọc được (không phải Linux)
+     */
+    private static long residentBytes() {
+        try {
+            for (String line : Files.readAllLines(PROC_STATUS)) {
+                if (line.startsWith("VmRSS:")) {
+                    String[] parts = line.trim().split("\\s+");
+                    return Long.parseLong(parts[1]) * 1024;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            return -1;
+        }
+        return -1;
+    }
+
+    public static final class Snapshot {
+        private final long heapUsedBytes;
+        private final long directBytes;
+        private final long tensorBufferBytes;
+        private final long residentBytes;
+
+        private Snapshot(long heapUsedBytes, long directBytes, long tensorBufferBytes, long residentBytes) {
+            this.heapUsedBytes = heapUsedBytes;
+            this.directBytes = directBytes;
+            this.tensorBufferBytes = tensorBufferBytes;
+            this.residentBytes = residentBytes;
+        }
+
+        public long getHeapUsedBytes() {
+            return heapUsedBytes;
+        }
+
+        public long getDirectBytes() {
+            return directBytes;
+        }
+
+        /**
+         * Buffer ảnh resize, input tensor và output của các predictor (đã gồm trong heap/direct)
+         */
+        public long getTensorBufferBytes() {
+            return tensorBufferBytes;
+        }
+
+        public long getResidentBytes() {
+            return residentBytes;
+        }
+
+        /**
+         * RSS ngoài heap và direct buffer: chủ yếu là PyTorch (model weights, workspace) và malloc native
+         */
+        public long getOtherNativeBytes() {
+            return residentBytes < 0 ? -1 : Math.max(0, residentBytes - heapUsedBytes - directBytes);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("heap %d MB | direct %d MB | tensor buffers %d MB | RSS %s",
+                    heapUsedBytes >> 20, directBytes >> 20, tensorBufferBytes >> 20,
+                    residentBytes < 0 ? "n/a" : (residentBytes >> 20) + " MB");
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package org.example.counter;
+
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.repository.zoo.ZooModel;
+import ai.djl.translate.TranslateException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * Pool các Detector (mặc định là Predictor dùng chung 1 model đã load)
+ * Predictor của DJL không thread-safe nên mỗi thread mượn 1 detector, predict xong thì trả lại
+ */
+public class PredictorPool implements AutoCloseable {
+
+    private final List<Detector> predictors;
+    private final BlockingQueue<Detector> idle;
+
+    /**
+     * @param model Model đã load (dùng chung giữa các predictor, mỗi predictor có translator riêng)
+     * @param size Số predictor trong pool
+     */
+    public PredictorPool(ZooModel<Image, DetectedObjects> model, int size) {
+        this(() -> new DjlDetector(model.newPredictor(ModelRegistry.newTranslator(ModelRegistry.DEFAULT_INPUT_SIZE))), size);
+    }
+
+    /**
+     * @param factory Tạo 1 detector (vd SyntheticDetector khi chạy không có model)
+     * @param size Số detector trong pool
+     */
+    public PredictorPool(Supplier<? extends Detector> factory, int size) {
+        this.predictors = new ArrayList<>(size);
+        this.idle = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++) {
+            Detector predictor = factory.get();
+            predictors.add(predictor);
+            idle.add(predictor);
+        }
+    }
+
+    /**
+     * Tính số predictor mặc định theo số core và số thread intra-op của mỗi predictor
+     */
+    public static int defaultPoolSize(int intraOpThreads) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, cores / Math.max(1, intraOpThreads));
+    }
+
+    /**
+     * Mượn 1 predictor, chờ nếu tất cả đang bận
+     */
+    public Detector borrow() throws InterruptedException {
+        return idle.take();
+    }
+
+    /**
+     * Trả predictor về pool
+     */
+    public void release(Detector predictor) {
+        idle.offer(predictor);
+    }
+
+    /**
+     * Mượn predictor, chạy predict rồi trả lại
+     */
+    public DetectedObjects predict(Image image) throws TranslateException {
+        Detector predictor;
+        try {
+            predictor = borrow();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TranslateException("Interrupted while waiting for a predictor", e);
+        }
+        try {
+            return predictor.detect(List.of(image)).get(0);
+        } finally {
+            release(predictor);
+        }
+    }
+
+    /**
+     * Chạy thử từng detector trên ảnh mẫu (batch 1 và batch batchSize) để JIT/native khởi tạo xong
+     * Gọi trước khi pool nhận frame thật
+     */
+    public void warmUp(Image image, int runs, int batchSize) throws TranslateException {
+        List<Image> batch = Collections.nCopies(Math.max(1, batchSize), image);
+        for (Detector predictor : predictors) {
+            for (int i = 0; i < runs; i++) {
+                predictor.detect(List.of(image));
+                if (batch.size() > 1) {
+                    predictor.detect(batch);
+                }
+            }
+        }
+    }
+
+    /**
+     * Số predictor trong pool
+     */
+    public int size() {
+        return predictors.size();
+    }
+
+    /**
+     * Số predictor đang rảnh
+     */
+    public int available() {
+        return idle.size();
+    }
+
+    @Override
+    public void close() {
+        for (Detector predictor : predictors) {
+            predictor.close();
+        }
+        idle.clear();
+    }
+}
@@ -0,0 +1,75 @@
+package org.example.counter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Frame pixel thô (đã decode sẵn ở encoder), dùng để bỏ qua bước decode JPEG
+ */
+public class RawFrame {
+
+    public enum PixelFormat {
+        RGB24,
+        BGR24,
+        NV12
+    }
+
+    private final int width;
+    private final int height;
+    private final PixelFormat format;
+    private final int stride;
+    private final ByteBuffer data;
+
+    /**
+     * @param stride Số byte mỗi dòng (plane Y với NV12), 0 = các dòng liền nhau
+     * @throws IllegalArgumentException Frame không hợp lệ (kích thước, stride, NV12 width lẻ, thiếu dữ liệu)
+     */
+    public RawFrame(int width, int height, PixelFormat format, int stride, ByteBuffer data) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid raw frame size: " + width + "x" + height);
+        }
+        // NV12: mỗi cặp pixel theo chiều ngang dùng chung 1 cặp UV, width lẻ thì cột cuối không có UV
+        if (format == PixelFormat.NV12 && (width & 1) != 0) {
+            throw new IllegalArgumentException("NV12 raw frame width must be even, got " + width);
+        }
+        long minStride = format == PixelFormat.NV12 ? width : (long) width * 3;
+        if (stride < 0 || (stride > 0 && stride < minStride)) {
+            throw new IllegalArgumentException(String.format(
+                    "Raw frame %dx%d %s stride %d is below the row size %d", width, height, format, stride, minStride));
+        }
+        long rowBytes = stride > 0 ? stride : minStride;
+        long required = format == PixelFormat.NV12
+                ? rowBytes * height + rowBytes * ((height + 1) / 2)
+                : rowBytes * height;
+        if (data.remaining() < required) {
+            throw new IllegalArgumentException(String.format(
+                    "Raw frame %dx%d %s needs %d bytes, got %d", width, height, format, required, data.remaining()));
+        }
+
+        // required <= remaining nên stride và mọi offset pixel đều nằm trong int
+        this.width = width;
+        this.height = height;
+        this.format = format;
+        this.stride = (int) rowBytes;
+        this.data = data;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public PixelFormat getFormat() {
+        return format;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    public ByteBuffer getData() {
+        return data;
+    }
+}
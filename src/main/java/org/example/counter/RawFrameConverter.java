@@ -0,0 +1,89 @@
+package org.example.counter;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+
+/**
+ * Chuyển RawFrame (RGB24/BGR24/NV12) thành BufferedImage
+ * Ghi thẳng vào pixel buffer của ảnh đích trong 1 lượt, không qua ImageIO
+ */
+public final class RawFrameConverter {
+
+    private RawFrameConverter() {
+    }
+
+    /**
+     * Convert raw frame vào ảnh mới TYPE_INT_RGB
+     */
+    public static BufferedImage toBufferedImage(RawFrame frame) {
+        BufferedImage image = new BufferedImage(frame.getWidth(), frame.getHeight(), BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        convert(frame, pixels);
+        return image;
+    }
+
+    /**
+     * Convert raw frame vào mảng pixel 0xRRGGBB (kích thước width * height)
+     */
+    public static void convert(RawFrame frame, int[] pixels) {
+        switch (frame.getFormat()) {
+            case RGB24 -> convertPacked(frame, pixels, 0, 2);
+            case BGR24 -> convertPacked(frame, pixels, 2, 0);
+            case NV12 -> convertNv12(frame, pixels);
+        }
+    }
+
+    private static void convertPacked(RawFrame frame, int[] pixels, int redOffset, int blueOffset) {
+        ByteBuffer data = frame.getData();
+        int base = data.position();
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        int stride = frame.getStride();
+
+        for (int y = 0; y < height; y++) {
+            int src = base + y * stride;
+            int dst = y * width;
+            for (int x = 0; x < width; x++, src += 3) {
+                int r = data.get(src + redOffset) & 0xFF;
+                int g = data.get(src + 1) & 0xFF;
+                int b = data.get(src + blueOffset) & 0xFF;
+                pixels[dst + x] = (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    /**
+     * NV12: plane Y đầy đủ, sau đó plane UV xen kẽ với độ phân giải 1/2 theo cả 2 chiều
+     * Chuyển màu theo BT.601 (limited range) bằng số nguyên
+     */
+    private static void convertNv12(RawFrame frame, int[] pixels) {
+        ByteBuffer data = frame.getData();
+        int base = data.position();
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        int stride = frame.getStride();
+        int uvBase = base + stride * height;
+
+        for (int y = 0; y < height; y++) {
+            int yRow = base + y * stride;
+            int uvRow = uvBase + (y >> 1) * stride;
+            int dst = y * width;
+            for (int x = 0; x < width; x++) {
+                int c = (data.get(yRow + x) & 0xFF) - 16;
+                int uvIndex = uvRow + (x & ~1);
+                int d = (data.get(uvIndex) & 0xFF) - 128;
+                int e = (data.get(uvIndex + 1) & 0xFF) - 128;
+
+                int r = clamp((298 * c + 409 * e + 128) >> 8);
+                int g = clamp((298 * c - 100 * d - 208 * e + 128) >> 8);
+                int b = clamp((298 * c + 516 * d + 128) >> 8);
+                pixels[dst + x] = (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}
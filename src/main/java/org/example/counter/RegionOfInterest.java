@@ -0,0 +1,135 @@
+package org.example.counter;
+
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.output.BoundingBox;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.modality.cv.output.Rectangle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Vùng ảnh đưa vào detector: dải ngang quanh counting line
+ * Chỉ phần ảnh có thể ảnh hưởng tới việc đếm được infer, box trả về được map lại tọa độ của cả frame
+ *
+ * Box của DJL là tọa độ normalized [0, 1] theo ảnh đầu vào, nên box trong vùng crop
+ * được chuyển về normalized theo cả frame
+ */
+public class RegionOfInterest {
+    private final double centerRatio;
+    private final double heightRatio;
+
+    /**
+     * @param centerRatio Vị trí tâm dải theo chiều dọc (0-1), 0.5 = counting line ở giữa frame
+     * @param heightRatio Chiều cao dải so với chiều cao frame (0-1)
+     */
+    public RegionOfInterest(double centerRatio, double heightRatio) {
+        this.centerRatio = centerRatio;
+        this.heightRatio = Math.min(1.0, Math.max(0.05, heightRatio));
+    }
+
+    /**
+     * Vùng crop đã tính theo pixel cho 1 frame cụ thể
+     */
+    public static final class Crop {
+        private final int x;
+        private final int y;
+        private final int width;
+        private final int height;
+        private final int frameWidth;
+        private final int frameHeight;
+
+        private Crop(int x, int y, int width, int height, int frameWidth, int frameHeight) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.frameWidth = frameWidth;
+            this.frameHeight = frameHeight;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * Crop có phủ cả frame không (khi đó không cần crop/remap)
+         */
+        public boolean isFullFrame() {
+            return y == 0 && height == frameHeight && x == 0 && width == frameWidth;
+        }
+
+        /**
+         * Cắt ảnh theo vùng crop
+         */
+        public Image apply(Image image) {
+            return isFullFrame() ? image : image.getSubImage(x, y, width, height);
+        }
+
+        /**
+         * Map box normalized theo vùng crop về normalized theo cả frame
+         */
+        public DetectedObjects remap(DetectedObjects detectedObjects) {
+            if (isFullFrame()) {
+                return detectedObjects;
+            }
+
+            List<DetectedObjects.DetectedObject> items = detectedObjects.items();
+            List<String> classNames = new ArrayList<>(items.size());
+            List<Double> probabilities = new ArrayList<>(items.size());
+            List<BoundingBox> boxes = new ArrayList<>(items.size());
+
+            double scaleX = (double) width / frameWidth;
+            double scaleY = (double) height / frameHeight;
+            double offsetX = (double) x / frameWidth;
+            double offsetY = (double) y / frameHeight;
+
+            for (DetectedObjects.DetectedObject obj : items) {
+                Rectangle rect = obj.getBoundingBox().getBounds();
+                classNames.add(obj.getClassName());
+                probabilities.add(obj.getProbability());
+                boxes.add(new Rectangle(
+                        offsetX + rect.getX() * scaleX,
+                        offsetY + rect.getY() * scaleY,
+                        rect.getWidth() * scaleX,
+                        rect.getHeight() * scaleY));
+            }
+            return new DetectedObjects(classNames, probabilities, boxes);
+        }
+    }
+
+    /**
+     * Tính vùng crop cho frame kích thước width x height
+     */
+    public Crop cropFor(int frameWidth, int frameHeight) {
+        int bandHeight = (int) Math.round(frameHeight * heightRatio);
+        int top = (int) Math.round(frameHeight * centerRatio - bandHeight / 2.0);
+        top = Math.max(0, Math.min(top, frameHeight - bandHeight));
+        return new Crop(0, top, frameWidth, bandHeight, frameWidth, frameHeight);
+    }
+
+    public double getCenterRatio() {
+        return centerRatio;
+    }
+
+    public double getHeightRatio() {
+        return heightRatio;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ROI[center=%.2f, height=%.2f]", centerRatio, heightRatio);
+    }
+}
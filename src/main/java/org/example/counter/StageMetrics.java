@@ -0,0 +1,90 @@
+package org.example.counter;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Độ trễ từng stage của pipeline cho 1 camera
+ */
+public class StageMetrics {
+
+    public enum Stage {
+        DECODE,     // decode JPEG / chuyển pixel thô + tính ROI
+        INFERENCE,  // từ lúc gửi vào batcher tới khi có kết quả (gồm thời gian chờ batch)
+        FILTER,     // lọc vehicle từ DetectedObjects
+        TRACK,      // cập nhật tracker + đếm
+        RESPONSE    // từ lúc nhận frame tới khi có kết quả trả về
+    }
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+    private final AtomicLong frames = new AtomicLong();
+    private volatile long windowStartNanos = System.nanoTime();
+
+    public StageMetrics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public LatencyHistogram get(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    public void recordSince(Stage stage, long startNanos) {
+        histograms[stage.ordinal()].recordSince(startNanos);
+    }
+
+    public void recordNanos(Stage stage, long nanos) {
+        histograms[stage.ordinal()].recordNanos(nanos);
+    }
+
+    /**
+     * Đếm 1 frame đã xử lý xong (tính throughput)
+     */
+    public void recordFrame() {
+        frames.incrementAndGet();
+    }
+
+    /**
+     * Chụp lại histogram của các stage và throughput trong khoảng từ lần reset trước
+     */
+    public Snapshot snapshot(boolean reset) {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-9, (now - windowStartNanos) / 1e9);
+        long frameCount = reset ? frames.getAndSet(0) : frames.get();
+        if (reset) {
+            windowStartNanos = now;
+        }
+
+        Map<Stage, LatencyHistogram.Snapshot> stages = new EnumMap<>(Stage.class);
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, get(stage).snapshot(reset));
+        }
+        return new Snapshot(frameCount, frameCount / seconds, stages);
+    }
+
+    public static final class Snapshot {
+        private final long frames;
+        private final double framesPerSecond;
+        private final Map<Stage, LatencyHistogram.Snapshot> stages;
+
+        private Snapshot(long frames, double framesPerSecond, Map<Stage, LatencyHistogram.Snapshot> stages) {
+            this.frames = frames;
+            this.framesPerSecond = framesPerSecond;
+            this.stages = stages;
+        }
+
+        public long getFrames() {
+            return frames;
+        }
+
+        public double getFramesPerSecond() {
+            return framesPerSecond;
+        }
+
+        public Map<Stage, LatencyHistogram.Snapshot> getStages() {
+            return stages;
+        }
+    }
+}
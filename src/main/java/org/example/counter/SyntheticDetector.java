@@ -0,0 +1,118 @@
+package org.example.counter;
+
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.output.BoundingBox;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.modality.cv.output.Rectangle;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Detector giả lập, không cần model: kết quả chỉ phụ thuộc nội dung ảnh (cùng ảnh → cùng box)
+ * và thời gian infer được mô phỏng, dùng để đo khả năng scale của server trên máy không có GPU/model
+ *
+ *   -Dcamera.detector=synthetic                   bật detector giả lập thay cho YOLO
+ *   -Dcamera.detector.synthetic.objects=8         số object mỗi frame
+ *   -Dcamera.detector.synthetic.batchMicros=2000  thời gian cố định mỗi batch
+ *   -Dcamera.detector.synthetic.imageMicros=8000  thời gian thêm cho mỗi ảnh trong batch
+ */
+public class SyntheticDetector implements Detector {
+    private static final String[] CLASSES = {"car", "car", "car", "motorcycle", "person", "bus", "truck"};
+
+    private static final int OBJECTS = Integer.getInteger("camera.detector.synthetic.objects", 8);
+    private static final long BATCH_MICROS = Long.getLong("camera.detector.synthetic.batchMicros", 2000);
+    private static final long IMAGE_MICROS = Long.getLong("camera.detector.synthetic.imageMicros", 8000);
+
+    // Lưới điểm ảnh lấy mẫu để tính hash nội dung
+    private static final int SAMPLE_GRID = 8;
+
+    private final int objects;
+    private final long batchNanos;
+    private final long imageNanos;
+
+    public SyntheticDetector() {
+        this(OBJECTS, BATCH_MICROS, IMAGE_MICROS);
+    }
+
+    public SyntheticDetector(int objects, long batchMicros, long imageMicros) {
+        this.objects = Math.max(0, objects);
+        this.batchNanos = TimeUnit.MICROSECONDS.toNanos(batchMicros);
+        this.imageNanos = TimeUnit.MICROSECONDS.toNanos(imageMicros);
+    }
+
+    /**
+     * Detector với thời gian infer nhân theo chi phí tương đối (vd tier ảnh nhỏ hơn 640)
+     */
+    public static SyntheticDetector scaled(double relativeCost) {
+        return new SyntheticDetector(OBJECTS, Math.round(BATCH_MICROS * relativeCost),
+                Math.round(IMAGE_MICROS * relativeCost));
+    }
+
+    /**
+     * Bật detector giả lập qua -Dcamera.detector=synthetic
+     */
+    public static boolean isEnabled() {
+        return "synthetic".equalsIgnoreCase(System.getProperty("camera.detector"));
+    }
+
+    @Override
+    public List<DetectedObjects> detect(List<Image> images) {
+        long deadline = System.nanoTime() + batchNanos + imageNanos * images.size();
+
+        List<DetectedObjects> results = new ArrayList<>(images.size());
+        for (Image image : images) {
+            results.add(detect(image));
+        }
+
+        // Mô phỏng thời gian infer: thread bị chiếm như khi chạy model thật
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+        return results;
+    }
+
+    private DetectedObjects detect(Image image) {
+        SplittableRandom random = new SplittableRandom(contentHash(image));
+
+        List<String> classNames = new ArrayList<>(objects);
+        List<Double> probabilities = new ArrayList<>(objects);
+        List<BoundingBox> boxes = new ArrayList<>(objects);
+        for (int i = 0; i < objects; i++) {
+            double w = 0.05 + random.nextDouble() * 0.1;
+            double h = 0.05 + random.nextDouble() * 0.1;
+            classNames.add(CLASSES[random.nextInt(CLASSES.length)]);
+            probabilities.add(0.05 + random.nextDouble() * 0.95);
+            boxes.add(new Rectangle(random.nextDouble() * (1 - w), random.nextDouble() * (1 - h), w, h));
+        }
+        return new DetectedObjects(classNames, probabilities, boxes);
+    }
+
+    /**
+     * Hash kích thước + 1 lưới điểm ảnh (không đọc hết ảnh)
+     */
+    private static long contentHash(Image image) {
+        long hash = 31L * image.getWidth() + image.getHeight();
+        if (image.getWrappedImage() instanceof BufferedImage buffered) {
+            int width = buffered.getWidth();
+            int height = buffered.getHeight();
+            for (int gy = 0; gy < SAMPLE_GRID; gy++) {
+                for (int gx = 0; gx < SAMPLE_GRID; gx++) {
+                    int x = (int) ((gx + 0.5) * width / SAMPLE_GRID);
+                    int y = (int) ((gy + 0.5) * height / SAMPLE_GRID);
+                    hash = hash * 1_000_003L + buffered.getRGB(x, y);
+                }
+            }
+        }
+        return hash;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,143 @@
+package org.example.counter;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffer dùng lại giữa các lần predict của 1 predictor: ảnh resize, input tensor (direct, native order)
+ * theo từng vị trí trong batch và mảng đọc output
+ *
+ * Tensor input được tạo trực tiếp trên direct buffer của slot nên không cấp phát native mới mỗi frame.
+ * Slot chỉ được ghi lại ở lần predict sau, khi NDManager của lần trước đã đóng
+ */
+final class TensorBuffers {
+
+    // Tổng số byte đang giữ bởi mọi TensorBuffers (báo cáo native memory)
+    private static final AtomicLong TOTAL_BYTES = new AtomicLong();
+
+    // Buffer của predictor đang chạy trên thread hiện tại (gắn bởi DjlDetector quanh mỗi lần predict)
+    private static final ThreadLocal<TensorBuffers> BOUND = new ThreadLocal<>();
+    private static final ThreadLocal<TensorBuffers> THREAD_DEFAULT = ThreadLocal.withInitial(TensorBuffers::new);
+
+    private BufferedImage resized;
+    private Graphics2D graphics;
+    private ByteBuffer[] inputs = new ByteBuffer[0];
+    private FloatBuffer[] inputViews = new FloatBuffer[0];
+    private float[] output = new float[0];
+    private long bytes;
+
+    /**
+     * Gắn buffer của predictor vào thread hiện tại trong lúc predict
+     */
+    static void bind(TensorBuffers buffers) {
+        BOUND.set(buffers);
+    }
+
+    static void unbind() {
+        BOUND.remove();
+    }
+
+    /**
+     * Buffer của predictor hiện tại, hoặc buffer riêng của thread nếu predictor không phải DjlDetector
+     */
+    static TensorBuffers current() {
+        TensorBuffers buffers = BOUND.get();
+        return buffers != null ? buffers : THREAD_DEFAULT.get();
+    }
+
+    static long getTotalBytes() {
+        return TOTAL_BYTES.get();
+    }
+
+    /**
+     * Resize ảnh về width x height (bilinear) vào ảnh BGR dùng lại
+     */
+    BufferedImage resize(BufferedImage source, int width, int height) {
+        if (resized == null || resized.getWidth() != width || resized.getHeight() != height) {
+            if (graphics != null) {
+                graphics.dispose();
+            }
+            resized = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+            graphics = resized.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            updateBytes();
+        }
+        graphics.drawImage(source, 0, 0, width, height, null);
+        return resized;
+    }
+
+    /**
+     * Direct buffer chứa input tensor CHW float32 của vị trí slot trong batch
+     * (ByteBuffer direct để engine tạo tensor trên chính vùng nhớ này, không copy)
+     */
+    ByteBuffer input(int slot, int floats) {
+        if (slot >= inputs.length) {
+            inputs = Arrays.copyOf(inputs, slot + 1);
+            inputViews = Arrays.copyOf(inputViews, slot + 1);
+        }
+        ByteBuffer buffer = inputs[slot];
+        if (buffer == null || buffer.capacity() != floats * Float.BYTES) {
+            buffer = ByteBuffer.allocateDirect(floats * Float.BYTES).order(ByteOrder.nativeOrder());
+            inputs[slot] = buffer;
+            inputViews[slot] = buffer.asFloatBuffer();
+            updateBytes();
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * View float của input slot (position 0) để ghi pixel
+     */
+    FloatBuffer inputView(int slot) {
+        FloatBuffer view = inputViews[slot];
+        view.clear();
+        return view;
+    }
+
+    /**
+     * Mảng đọc output, tăng kích thước khi cần
+     */
+    float[] output(int floats) {
+        if (output.length < floats) {
+            output = new float[floats];
+            updateBytes();
+        }
+        return output;
+    }
+
+    private void updateBytes() {
+        long total = (long) output.length * Float.BYTES;
+        if (resized != null) {
+            total += (long) resized.getWidth() * resized.getHeight() * 3;
+        }
+        for (ByteBuffer input : inputs) {
+            if (input != null) {
+                total += input.capacity();
+            }
+        }
+        TOTAL_BYTES.addAndGet(total - bytes);
+        bytes = total;
+    }
+
+    /**
+     * Bỏ tính buffer khi predictor đóng
+     */
+    void release() {
+        if (graphics != null) {
+            graphics.dispose();
+        }
+        resized = null;
+        graphics = null;
+        inputs = new ByteBuffer[0];
+        inputViews = new FloatBuffer[0];
+        output = new float[0];
+        updateBytes();
+    }
+}
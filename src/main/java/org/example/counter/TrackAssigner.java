@@ -0,0 +1,420 @@
+package org.example.counter;
+
+import java.util.Arrays;
+
+/**
+ * Ghép track với detection theo IoU tối ưu toàn cục
+ *
+ * - Lưới đều (uniform grid) trên các detection để chỉ xét cặp track/detection ở gần nhau
+ * - Các cặp có IoU đạt ngưỡng tạo thành đồ thị, tách theo thành phần liên thông
+ * - Mỗi thành phần giải bằng Hungarian (cost = 1 - IoU), thường chỉ vài phần tử
+ *
+ * Mọi buffer được dùng lại giữa các frame, không phụ thuộc thứ tự track như greedy matching
+ */
+public class TrackAssigner {
+
+    private static final double INFEASIBLE = 1e6;
+    private static final double HUNGARIAN_INF = 1e18;
+
+    // Ít detection thì tính cả ma trận IoU (SIMD), không cần lưới
+    private static final int DENSE_LIMIT = 64;
+    private static final int MAX_GRID_DIM = 256;
+
+    // Lưới: CSR (cellStart → cellItems)
+    private int[] cellStart = new int[0];
+    private int[] cellCursor = new int[0];
+    private int[] cellItems = new int[0];
+
+    // Đánh dấu detection đã xét cho track hiện tại
+    private int[] seenStamp = new int[0];
+    private int stamp = 0;
+
+    // Ma trận IoU cho trường hợp ít detection
+    private float[] iouMatrix = new float[0];
+
+    // Các cặp ứng viên
+    private int pairCount;
+    private int[] pairTrack = new int[64];
+    private int[] pairDet = new int[64];
+    private float[] pairIou = new float[64];
+
+    // Union-find trên (tracks ∪ detections)
+    private int[] parent = new int[0];
+    private int[] componentOfRoot = new int[0];
+    private int[] pairComponent = new int[64];
+    private int[] componentStart = new int[0];
+    private int[] componentCursor = new int[0];
+    private int[] componentPairs = new int[64];
+
+    // Hungarian cho từng thành phần
+    private int[] trackLocal = new int[0];
+    private int[] detLocal = new int[0];
+    private int[] localTracks = new int[0];
+    private int[] localDets = new int[0];
+    private double[] cost = new double[0];
+    private double[] u = new double[0];
+    private double[] v = new double[0];
+    private double[] minv = new double[0];
+    private int[] p = new int[0];
+    private int[] way = new int[0];
+    private boolean[] used = new boolean[0];
+
+    /**
+     * Ghép track với detection
+     *
+     * @param tracks Box (dự đoán) của các track
+     * @param thresholds Ngưỡng IoU tối thiểu của từng track
+     * @param detections Box của các detection
+     * @param trackToDetection Output: index detection được ghép cho từng track, -1 nếu không có
+     */
+    public void assign(BoxBuffer tracks, float[] thresholds, BoxBuffer detections, int[] trackToDetection) {
+        int trackCount = tracks.size();
+        int detCount = detections.size();
+        Arrays.fill(trackToDetection, 0, trackCount, -1);
+        if (trackCount == 0 || detCount == 0) {
+            return;
+        }
+
+        pairCount = 0;
+        if (detCount <= DENSE_LIMIT) {
+            collectPairsDense(tracks, thresholds, detections);
+        } else {
+            collectPairsGrid(tracks, thresholds, detections);
+        }
+        if (pairCount > 0) {
+            solveComponents(trackCount, detCount, trackToDetection);
+        }
+    }
+
+    private void collectPairsDense(BoxBuffer tracks, float[] thresholds, BoxBuffer detections) {
+        int detCount = detections.size();
+        int cells = tracks.size() * detCount;
+        if (iouMatrix.length < cells) {
+            iouMatrix = new float[Math.max(cells, iouMatrix.length * 2)];
+        }
+        IouMatrix.compute(tracks, detections, iouMatrix);
+
+        for (int t = 0; t < tracks.size(); t++) {
+            int row = t * detCount;
+            for (int d = 0; d < detCount; d++) {
+                addPairIfAboveThreshold(thresholds, t, d, iouMatrix[row + d]);
+            }
+        }
+    }
+
+    private void collectPairsGrid(BoxBuffer tracks, float[] thresholds, BoxBuffer detections) {
+        int detCount = detections.size();
+
+        // Phạm vi và kích thước cell ~ kích thước trung bình của detection
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        float sizeSum = 0;
+        for (int d = 0; d < detCount; d++) {
+            minX = Math.min(minX, detections.x[d]);
+            minY = Math.min(minY, detections.y[d]);
+            maxX = Math.max(maxX, detections.x[d] + detections.w[d]);
+            maxY = Math.max(maxY, detections.y[d] + detections.h[d]);
+            sizeSum += Math.max(detections.w[d], detections.h[d]);
+        }
+        float cellSize = Math.max(sizeSum / detCount, 1e-6f);
+        float spanX = Math.max(maxX - minX, 1e-6f);
+        float spanY = Math.max(maxY - minY, 1e-6f);
+        int gridW = Math.min(MAX_GRID_DIM, (int) (spanX / cellSize) + 1);
+        int gridH = Math.min(MAX_GRID_DIM, (int) (spanY / cellSize) + 1);
+        float invCellX = gridW / spanX;
+        float invCellY = gridH / spanY;
+        int cellCount = gridW * gridH;
+
+        if (cellStart.length < cellCount + 1) {
+            cellStart = new int[cellCount + 1];
+            cellCursor = new int[cellCount];
+        }
+        Arrays.fill(cellStart, 0, cellCount + 1, 0);
+
+        // Đếm số detection mỗi cell
+        for (int d = 0; d < detCount; d++) {
+            int ix0 = cellIndex(detections.x[d], minX, invCellX, gridW);
+            int ix1 = cellIndex(detections.x[d] + detections.w[d], minX, invCellX, gridW);
+            int iy0 = cellIndex(detections.y[d], minY, invCellY, gridH);
+            int iy1 = cellIndex(detections.y[d] + detections.h[d], minY, invCellY, gridH);
+            for (int iy = iy0; iy <= iy1; iy++) {
+                for (int ix = ix0; ix <= ix1; ix++) {
+                    cellStart[iy * gridW + ix + 1]++;
+                }
+            }
+        }
+        for (int c = 0; c < cellCount; c++) {
+            cellStart[c + 1] += cellStart[c];
+            cellCursor[c] = cellStart[c];
+        }
+        if (cellItems.length < cellStart[cellCount]) {
+            cellItems = new int[Math.max(cellStart[cellCount], cellItems.length * 2)];
+        }
+        for (int d = 0; d < detCount; d++) {
+            int ix0 = cellIndex(detections.x[d], minX, invCellX, gridW);
+            int ix1 = cellIndex(detections.x[d] + detections.w[d], minX, invCellX, gridW);
+            int iy0 = cellIndex(detections.y[d], minY, invCellY, gridH);
+            int iy1 = cellIndex(detections.y[d] + detections.h[d], minY, invCellY, gridH);
+            for (int iy = iy0; iy <= iy1; iy++) {
+                for (int ix = ix0; ix <= ix1; ix++) {
+                    cellItems[cellCursor[iy * gridW + ix]++] = d;
+                }
+            }
+        }
+
+        // Mỗi track chỉ xét detection nằm trong các cell mà box của nó phủ lên
+        if (seenStamp.length < detCount) {
+            seenStamp = new int[detCount];
+            stamp = 0;
+        }
+        for (int t = 0; t < tracks.size(); t++) {
+            if (++stamp == Integer.MAX_VALUE) {
+                Arrays.fill(seenStamp, 0);
+                stamp = 1;
+            }
+            int ix0 = cellIndex(tracks.x[t], minX, invCellX, gridW);
+            int ix1 = cellIndex(tracks.x[t] + tracks.w[t], minX, invCellX, gridW);
+            int iy0 = cellIndex(tracks.y[t], minY, invCellY, gridH);
+            int iy1 = cellIndex(tracks.y[t] + tracks.h[t], minY, invCellY, gridH);
+            for (int iy = iy0; iy <= iy1; iy++) {
+                for (int ix = ix0; ix <= ix1; ix++) {
+                    int cell = iy * gridW + ix;
+                    for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                        int d = cellItems[k];
+                        if (seenStamp[d] != stamp) {
+                            seenStamp[d] = stamp;
+                            considerPair(tracks, thresholds, detections, t, d);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static int cellIndex(float value, float min, float invCell, int gridSize) {
+        int index = (int) ((value - min) * invCell);
+        return index < 0 ? 0 : (index >= gridSize ? gridSize - 1 : index);
+    }
+
+    private void considerPair(BoxBuffer tracks, float[] thresholds, BoxBuffer detections, int t, int d) {
+        addPairIfAboveThreshold(thresholds, t, d, BoxBuffer.iou(tracks, t, detections, d));
+    }
+
+    private void addPairIfAboveThreshold(float[] thresholds, int t, int d, float iou) {
+        if (iou > 0 && iou >= thresholds[t]) {
+            if (pairCount == pairTrack.length) {
+                int newCapacity = pairCount * 2;
+                pairTrack = Arrays.copyOf(pairTrack, newCapacity);
+                pairDet = Arrays.copyOf(pairDet, newCapacity);
+                pairIou = Arrays.copyOf(pairIou, newCapacity);
+            }
+            pairTrack[pairCount] = t;
+            pairDet[pairCount] = d;
+            pairIou[pairCount] = iou;
+            pairCount++;
+        }
+    }
+
+    /**
+     * Tách các cặp theo thành phần liên thông, giải từng thành phần
+     */
+    private void solveComponents(int trackCount, int detCount, int[] trackToDetection) {
+        int nodeCount = trackCount + detCount;
+        if (parent.length < nodeCount) {
+            parent = new int[nodeCount];
+            componentOfRoot = new int[nodeCount];
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            parent[i] = i;
+            componentOfRoot[i] = -1;
+        }
+        for (int k = 0; k < pairCount; k++) {
+            union(pairTrack[k], trackCount + pairDet[k]);
+        }
+
+        // Đánh số thành phần, gom cặp theo thành phần (CSR)
+        if (pairComponent.length < pairCount) {
+            pairComponent = new int[pairTrack.length];
+            componentPairs = new int[pairTrack.length];
+        }
+        int componentCount = 0;
+        for (int k = 0; k < pairCount; k++) {
+            int root = find(pairTrack[k]);
+            if (componentOfRoot[root] < 0) {
+                componentOfRoot[root] = componentCount++;
+            }
+            pairComponent[k] = componentOfRoot[root];
+        }
+        if (componentStart.length < componentCount + 1) {
+            componentStart = new int[componentCount + 1];
+            componentCursor = new int[componentCount + 1];
+        }
+        Arrays.fill(componentStart, 0, componentCount + 1, 0);
+        for (int k = 0; k < pairCount; k++) {
+            componentStart[pairComponent[k] + 1]++;
+        }
+        for (int c = 0; c < componentCount; c++) {
+            componentStart[c + 1] += componentStart[c];
+        }
+        System.arraycopy(componentStart, 0, componentCursor, 0, componentCount);
+        for (int k = 0; k < pairCount; k++) {
+            componentPairs[componentCursor[pairComponent[k]]++] = k;
+        }
+
+        if (trackLocal.length < trackCount) {
+            trackLocal = new int[trackCount];
+            Arrays.fill(trackLocal, -1);
+            localTracks = new int[trackCount];
+        }
+        if (detLocal.length < detCount) {
+            detLocal = new int[detCount];
+            Arrays.fill(detLocal, -1);
+            localDets = new int[detCount];
+        }
+
+        for (int c = 0; c < componentCount; c++) {
+            int from = componentStart[c];
+            int to = componentStart[c + 1];
+            if (to - from == 1) {
+                // Thành phần chỉ có 1 cặp: ghép luôn
+                int k = componentPairs[from];
+                trackToDetection[pairTrack[k]] = pairDet[k];
+            } else {
+                solveComponent(from, to, trackToDetection);
+            }
+        }
+    }
+
+    private void solveComponent(int from, int to, int[] trackToDetection) {
+        // Đánh index cục bộ cho track và detection trong thành phần
+        int rows = 0;
+        int cols = 0;
+        for (int i = from; i < to; i++) {
+            int k = componentPairs[i];
+            if (trackLocal[pairTrack[k]] < 0) {
+                trackLocal[pairTrack[k]] = rows;
+                localTracks[rows++] = pairTrack[k];
+            }
+            if (detLocal[pairDet[k]] < 0) {
+                detLocal[pairDet[k]] = cols;
+                localDets[cols++] = pairDet[k];
+            }
+        }
+
+        // Hungarian cần số hàng <= số cột: chuyển vị nếu nhiều track hơn detection
+        boolean transposed = rows > cols;
+        int n = transposed ? cols : rows;
+        int m = transposed ? rows : cols;
+        if (cost.length < n * m) {
+            cost = new double[n * m];
+        }
+        Arrays.fill(cost, 0, n * m, INFEASIBLE);
+        for (int i = from; i < to; i++) {
+            int k = componentPairs[i];
+            int r = trackLocal[pairTrack[k]];
+            int c = detLocal[pairDet[k]];
+            double pairCost = 1.0 - pairIou[k];
+            if (transposed) {
+                cost[c * m + r] = pairCost;
+            } else {
+                cost[r * m + c] = pairCost;
+            }
+        }
+
+        hungarian(n, m);
+
+        for (int j = 1; j <= m; j++) {
+            int i = p[j];
+            if (i == 0 || cost[(i - 1) * m + (j - 1)] >= INFEASIBLE) {
+                continue;
+            }
+            int r = transposed ? j - 1 : i - 1;
+            int c = transposed ? i - 1 : j - 1;
+            trackToDetection[localTracks[r]] = localDets[c];
+        }
+
+        // Reset index cục bộ cho thành phần tiếp theo
+        for (int r = 0; r < rows; r++) {
+            trackLocal[localTracks[r]] = -1;
+        }
+        for (int c = 0; c < cols; c++) {
+            detLocal[localDets[c]] = -1;
+        }
+    }
+
+    /**
+     * Hungarian O(n^2 m) với potentials, ma trận n x m (n <= m), kết quả p[col] = row (1-indexed)
+     */
+    private void hungarian(int n, int m) {
+        if (p.length < m + 1) {
+            p = new int[m + 1];
+            way = new int[m + 1];
+            v = new double[m + 1];
+            minv = new double[m + 1];
+            used = new boolean[m + 1];
+        }
+        if (u.length < n + 1) {
+            u = new double[n + 1];
+        }
+        Arrays.fill(u, 0, n + 1, 0);
+        Arrays.fill(v, 0, m + 1, 0);
+        Arrays.fill(p, 0, m + 1, 0);
+        Arrays.fill(way, 0, m + 1, 0);
+
+        for (int i = 1; i <= n; i++) {
+            p[0] = i;
+            int j0 = 0;
+            Arrays.fill(minv, 0, m + 1, HUNGARIAN_INF);
+            Arrays.fill(used, 0, m + 1, false);
+            do {
+                used[j0] = true;
+                int i0 = p[j0];
+                double delta = HUNGARIAN_INF;
+                int j1 = 0;
+                for (int j = 1; j <= m; j++) {
+                    if (!used[j]) {
+                        double cur = cost[(i0 - 1) * m + (j - 1)] - u[i0] - v[j];
+                        if (cur < minv[j]) {
+                            minv[j] = cur;
+                            way[j] = j0;
+                        }
+                        if (minv[j] < delta) {
+                            delta = minv[j];
+                            j1 = j;
+                        }
+                    }
+                }
+                for (int j = 0; j <= m; j++) {
+                    if (used[j]) {
+                        u[p[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minv[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (p[j0] != 0);
+            do {
+                int j1 = way[j0];
+                p[j0] = p[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+    }
+
+    private int find(int x) {
+        while (parent[x] != x) {
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    private void union(int a, int b) {
+        int ra = find(a);
+        int rb = find(b);
+        if (ra != rb) {
+            parent[ra] = rb;
+        }
+    }
+}
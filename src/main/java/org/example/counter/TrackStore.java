@@ -0,0 +1,246 @@
+package org.example.counter;
+
+import ai.djl.modality.cv.output.Rectangle;
+
+import java.util.Arrays;
+
+/**
+ * Lưu các track đang active dạng struct-of-arrays (mảng song song float/int)
+ * Box (x, y, w, h) là box của lần detect gần nhất, vận tốc tính theo center
+ * Không cấp phát object mỗi frame sau khi các mảng đã đủ lớn
+ */
+public class TrackStore {
+    // Bit trong flags: track đã được đếm (đã qua line hoặc xuất hiện bên dưới line)
+    public static final int FLAG_COUNTED = 1;
+    // Bit trong flags: track đã đủ số lần detect để được xác nhận (không còn tentative)
+    public static final int FLAG_CONFIRMED = 2;
+    // Bit trong flags: track đi qua line khi còn tentative, sẽ được đếm khi xác nhận
+    public static final int FLAG_CROSSING_PENDING = 4;
+
+    int size;
+
+    int[] id;
+    float[] x;
+    float[] y;
+    float[] w;
+    float[] h;
+    float[] vx;
+    float[] vy;
+    int[] missing;
+    int[] coasted;
+    int[] held;
+    int[] age;
+    int[] flags;
+    String[] className;
+
+    public TrackStore(int capacity) {
+        int c = Math.max(1, capacity);
+        id = new int[c];
+        x = new float[c];
+        y = new float[c];
+        w = new float[c];
+        h = new float[c];
+        vx = new float[c];
+        vy = new float[c];
+        missing = new int[c];
+        coasted = new int[c];
+        held = new int[c];
+        age = new int[c];
+        flags = new int[c];
+        className = new String[c];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Số slot đã cấp phát (ước tính bộ nhớ)
+     */
+    int capacity() {
+        return id.length;
+    }
+
+    /**
+     * Thêm track mới từ detection d, trả về index
+     */
+    int add(int trackId, DetectionBuffer detections, int d) {
+        ensureCapacity(size + 1);
+        int i = size++;
+        set(i, trackId, detections, d);
+        return i;
+    }
+
+    /**
+     * Ghi đè slot i bằng track mới từ detection d (dùng khi evict để giữ giới hạn số track)
+     */
+    void set(int i, int trackId, DetectionBuffer detections, int d) {
+        id[i] = trackId;
+        x[i] = detections.x[d];
+        y[i] = detections.y[d];
+        w[i] = detections.w[d];
+        h[i] = detections.h[d];
+        vx[i] = 0;
+        vy[i] = 0;
+        missing[i] = 0;
+        coasted[i] = 0;
+        held[i] = 0;
+        age[i] = 1;
+        flags[i] = 0;
+        className[i] = detections.className[d];
+    }
+
+    /**
+     * Update track i khi match với detection d
+     * Vận tốc = dịch chuyển center / số frame từ lần detect trước (missing đã tính cả frame hiện tại,
+     * cộng thêm các frame coast và frame motion gate giữ nguyên)
+     */
+    void update(int i, DetectionBuffer detections, int d) {
+        int framesPassed = Math.max(1, missing[i]) + coasted[i] + held[i];
+        float newCenterX = detections.x[d] + detections.w[d] / 2;
+        float newCenterY = detections.y[d] + detections.h[d] / 2;
+
+        vx[i] = (newCenterX - (x[i] + w[i] / 2)) / framesPassed;
+        vy[i] = (newCenterY - (y[i] + h[i] / 2)) / framesPassed;
+
+        x[i] = detections.x[d];
+        y[i] = detections.y[d];
+        w[i] = detections.w[d];
+        h[i] = detections.h[d];
+        className[i] = detections.className[d];
+        missing[i] = 0;
+        coasted[i] = 0;
+        held[i] = 0;
+        age[i]++;
+    }
+
+    /**
+     * Frame không đổi so với lần detect trước: track đứng tại vị trí đã detect
+     * (bỏ phần dự đoán của các frame coast, không tính là missing)
+     * Vận tốc giữ nguyên, số frame đã trôi qua được cộng vào held để lần update sau chia đúng
+     */
+    void hold(int i) {
+        held[i] += coasted[i] + 1;
+        coasted[i] = 0;
+    }
+
+    /**
+     * Ghi box dự đoán (theo vận tốc) của track i vào buffer
+     */
+    void appendPredictedBox(int i, BoxBuffer out) {
+        int framesAhead = missing[i] + coasted[i];
+        if (framesAhead == 0) {
+            out.add(x[i], y[i], w[i], h[i]);
+            return;
+        }
+        float predictedX = x[i] + vx[i] * framesAhead;
+        float predictedY = y[i] + vy[i] * framesAhead;
+
+        // Đảm bảo tọa độ không âm
+        out.add(Math.max(0f, predictedX), Math.max(0f, predictedY), w[i], h[i]);
+    }
+
+    boolean isCounted(int i) {
+        return (flags[i] & FLAG_COUNTED) != 0;
+    }
+
+    void markCounted(int i) {
+        flags[i] |= FLAG_COUNTED;
+    }
+
+    boolean isConfirmed(int i) {
+        return (flags[i] & FLAG_CONFIRMED) != 0;
+    }
+
+    /**
+     * Số track đã xác nhận
+     */
+    public int confirmedCount() {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (isConfirmed(i)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Tìm index của track theo id, -1 nếu không còn active
+     */
+    int indexOf(int trackId) {
+        for (int i = 0; i < size; i++) {
+            if (id[i] == trackId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Tọa độ Y của center hiện tại (vị trí dự đoán nếu đang coast)
+     */
+    float currentCenterY(int i) {
+        return y[i] + h[i] / 2 + vy[i] * coasted[i];
+    }
+
+    /**
+     * Chép track ở index from sang index to (dùng khi compact sau khi xóa)
+     */
+    void move(int from, int to) {
+        id[to] = id[from];
+        x[to] = x[from];
+        y[to] = y[from];
+        w[to] = w[from];
+        h[to] = h[from];
+        vx[to] = vx[from];
+        vy[to] = vy[from];
+        missing[to] = missing[from];
+        coasted[to] = coasted[from];
+        held[to] = held[from];
+        age[to] = age[from];
+        flags[to] = flags[from];
+        className[to] = className[from];
+    }
+
+    /**
+     * Cắt bớt size sau khi compact
+     */
+    void truncate(int newSize) {
+        Arrays.fill(className, newSize, size, null);
+        size = newSize;
+    }
+
+    public void clear() {
+        truncate(0);
+    }
+
+    /**
+     * Copy track i ra object TrackedVehicle (view chỉ đọc cho code bên ngoài)
+     */
+    public TrackedVehicle toVehicle(int i) {
+        return new TrackedVehicle(id[i],
+                new Rectangle(x[i], y[i], w[i], h[i]),
+                className[i], missing[i], coasted[i], age[i], vx[i], vy[i]);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= id.length) {
+            return;
+        }
+        int c = Math.max(capacity, id.length * 2);
+        id = Arrays.copyOf(id, c);
+        x = Arrays.copyOf(x, c);
+        y = Arrays.copyOf(y, c);
+        w = Arrays.copyOf(w, c);
+        h = Arrays.copyOf(h, c);
+        vx = Arrays.copyOf(vx, c);
+        vy = Arrays.copyOf(vy, c);
+        missing = Arrays.copyOf(missing, c);
+        coasted = Arrays.copyOf(coasted, c);
+        held = Arrays.copyOf(held, c);
+        age = Arrays.copyOf(age, c);
+        flags = Arrays.copyOf(flags, c);
+        className = Arrays.copyOf(className, c);
+    }
+}
@@ -0,0 +1,55 @@
+package org.example.counter;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernel IoU dùng Vector API: mỗi track so với nhiều detection cùng lúc theo lane
+ * Chỉ được load khi module jdk.incubator.vector có mặt (xem IouMatrix)
+ */
+final class VectorIouKernel {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private VectorIouKernel() {
+    }
+
+    static void compute(BoxBuffer tracks, BoxBuffer detections, float[] out) {
+        int detectionCount = detections.size();
+        int bound = SPECIES.loopBound(detectionCount);
+        FloatVector zero = FloatVector.zero(SPECIES);
+
+        for (int t = 0; t < tracks.size(); t++) {
+            float left = tracks.x[t];
+            float top = tracks.y[t];
+            float right = tracks.x[t] + tracks.w[t];
+            float bottom = tracks.y[t] + tracks.h[t];
+            float trackArea = tracks.w[t] * tracks.h[t];
+            int row = t * detectionCount;
+
+            int d = 0;
+            for (; d < bound; d += SPECIES.length()) {
+                FloatVector dx = FloatVector.fromArray(SPECIES, detections.x, d);
+                FloatVector dy = FloatVector.fromArray(SPECIES, detections.y, d);
+                FloatVector dw = FloatVector.fromArray(SPECIES, detections.w, d);
+                FloatVector dh = FloatVector.fromArray(SPECIES, detections.h, d);
+
+                FloatVector x1 = dx.max(left);
+                FloatVector y1 = dy.max(top);
+                FloatVector x2 = dx.add(dw).min(right);
+                FloatVector y2 = dy.add(dh).min(bottom);
+
+                FloatVector intersection = x2.sub(x1).max(0f).mul(y2.sub(y1).max(0f));
+                FloatVector union = dw.mul(dh).add(trackArea).sub(intersection);
+
+                VectorMask<Float> degenerate = union.lt(1e-6f);
+                intersection.div(union).blend(zero, degenerate).intoArray(out, row + d);
+            }
+            // Phần dư không đủ 1 vector
+            for (; d < detectionCount; d++) {
+                out[row + d] = BoxBuffer.iou(tracks, t, detections, d);
+            }
+        }
+    }
+}
@@ -1,20 +1,26 @@
 package org.example.counter;
 
-import ai.djl.Application;
 import ai.djl.MalformedModelException;
-import ai.djl.inference.Predictor;
 import ai.djl.modality.cv.Image;
 import ai.djl.modality.cv.ImageFactory;
-import ai.djl.modality.cv.output.DetectedObjects;
-import ai.djl.repository.zoo.Criteria;
 import ai.djl.repository.zoo.ModelNotFoundException;
-import ai.djl.repository.zoo.ZooModel;
-import ai.djl.training.util.ProgressBar;
 import ai.djl.translate.TranslateException;
+import org.example.counter.AsyncLog.Level;
 
-import java.io.ByteArrayInputStream;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Service đếm số phương tiện trong video với tracking
@@ -22,31 +28,84 @@ import java.util.*;
  */
 public class VehicleCounterService implements AutoCloseable {
 
-    private final Predictor<Image, DetectedObjects> predictor;
-    private final VehicleTracker tracker;
+    // Mỗi input size có pool predictor + batcher riêng
+    private final Map<Integer, InputTier> tiers = new TreeMap<>();
+    private final CameraSessionRegistry sessions;
     private final ImageFactory imageFactory;
-
-    public static VehicleCounterService instance;
-
-    static {
-        try {
-            instance = new VehicleCounterService();
-        } catch (ModelNotFoundException | MalformedModelException | IOException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-    // Vehicle classes trong COCO dataset
-    private static final Set<String> VEHICLE_CLASSES = new HashSet<>(
-            Arrays.asList("car", "motorcycle", "bus", "truck")
-    );
-
-    // Confidence threshold cho detection
-    private static final double CONFIDENCE_THRESHOLD = 0.1;
-
-    // Counter
-    private int frameCount = 0;
-    private boolean headerPrinted = false;
+    private final JpegDecoder jpegDecoder;
+    private final MemoryAccountant memoryAccountant;
+
+    // Pipeline stages: decode → infer (batcher) → track
+    private final ThreadPoolExecutor decodeExecutor;
+    private final ExecutorService trackExecutor;
+
+    // Đường kẻ của bảng thống kê frame
+    private static final String TABLE_RULE = "=".repeat(100);
+
+    // Camera id dùng khi request không gửi kèm id
+    public static final String DEFAULT_CAMERA_ID = "default";
+
+    // Session registry
+    private static final int SESSION_STRIPES = Integer.getInteger("camera.session.stripes", 64);
+    private static final long SESSION_IDLE_TIMEOUT_SEC = Long.getLong("camera.session.idleTimeoutSec", 300);
+
+    // Inference: số thread intra-op mỗi predictor, số predictor mặc định = cores / intra-op
+    private static final int INTRA_OP_THREADS = Integer.getInteger("camera.inference.intraOpThreads", 2);
+    private static final int PREDICTOR_COUNT = Integer.getInteger("camera.inference.predictors",
+            PredictorPool.defaultPoolSize(INTRA_OP_THREADS));
+
+    // Kích thước ảnh đầu vào detector: mặc định + riêng từng camera ("cam-1=320,cam-2=416")
+    private static final int INPUT_SIZE = Integer.getInteger("camera.input.size", ModelRegistry.DEFAULT_INPUT_SIZE);
+    private static final Map<String, Integer> CAMERA_INPUT_SIZES = parseInputSizes(System.getProperty("camera.input.sizes"));
+
+    // Micro-batching: flush khi đủ batch hoặc hết deadline
+    private static final int BATCH_MAX_SIZE = Integer.getInteger("camera.batch.maxSize", 8);
+    private static final long BATCH_MAX_WAIT_MICROS = Long.getLong("camera.batch.maxWaitMicros", 5000);
+
+    // Pipeline: số thread decode, độ dài hàng đợi decode, số frame tối đa đang xử lý mỗi camera
+    private static final int DECODE_THREADS = Integer.getInteger("camera.pipeline.decodeThreads",
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int DECODE_QUEUE_SIZE = Integer.getInteger("camera.pipeline.decodeQueue", 64);
+    private static final int MAX_IN_FLIGHT_FRAMES = Integer.getInteger("camera.pipeline.maxInFlight", 4);
+
+    // Decode JPEG có subsampling về gần input size detector, ảnh đích dùng lại qua pool
+    private static final boolean DECODE_SUBSAMPLE =
+            Boolean.parseBoolean(System.getProperty("camera.decode.subsample", "true"));
+    private static final int DECODE_POOL_SIZE = Integer.getInteger("camera.decode.poolSize", 64);
+
+    // Detect-every-N: chạy YOLO mỗi N frame, giữa các lần detect tracker tiến theo dự đoán
+    // Adaptive: vẫn detect mọi frame khi có vehicle mới (age < MIN_STABLE_AGE) hoặc đang missing
+    private static final int DETECTION_INTERVAL = Integer.getInteger("camera.detect.interval", 1);
+    private static final boolean DETECTION_ADAPTIVE =
+            Boolean.parseBoolean(System.getProperty("camera.detect.adaptive", "true"));
+    private static final int MIN_STABLE_AGE = Integer.getInteger("camera.detect.minStableAge", 3);
+
+    // Warm-up model trước khi service sẵn sàng
+    private static final int WARMUP_RUNS = Integer.getInteger("camera.model.warmupRuns", 2);
+    private static final int WARMUP_IMAGE_SIZE = Integer.getInteger("camera.model.warmupSize", 640);
+
+    // Vòng đời track: số lần detect để xác nhận, số track tối đa mỗi camera
+    private static final int TRACK_MIN_HITS = Integer.getInteger("camera.track.minHits", 3);
+    private static final int TRACK_MAX_ACTIVE = Integer.getInteger("camera.track.maxActive", 256);
+
+    // Cap bộ nhớ của node (MB, 0 = không giới hạn) và phần tối thiểu dành cho mỗi camera mới
+    private static final long MEMORY_MAX_BYTES = Long.getLong("camera.memory.maxMB", 0) << 20;
+    private static final long MEMORY_SESSION_RESERVE_BYTES = Long.getLong("camera.memory.sessionReserveMB", 32) << 20;
+
+    // ROI: chỉ infer dải ngang quanh counting line (tâm ở giữa frame như VehicleTracker)
+    private static final boolean ROI_ENABLED = Boolean.getBoolean("camera.roi.enabled");
+    private static final double ROI_CENTER_RATIO = Double.parseDouble(System.getProperty("camera.roi.center", "0.5"));
+    private static final double ROI_HEIGHT_RATIO = Double.parseDouble(System.getProperty("camera.roi.height", "0.5"));
+
+    // Motion gate: frame gần như không đổi quanh counting line thì không infer (cảnh tĩnh ban đêm, tắc đường)
+    // Dải so sánh là vùng ROI nếu bật, ngược lại là dải cao MOTION_BAND_RATIO quanh counting line
+    private static final boolean MOTION_ENABLED = Boolean.getBoolean("camera.motion.enabled");
+    private static final double MOTION_BAND_RATIO = Double.parseDouble(System.getProperty("camera.motion.band", "0.5"));
+    private static final int MOTION_THUMB_WIDTH = Integer.getInteger("camera.motion.thumbWidth", 32);
+    private static final int MOTION_PIXEL_THRESHOLD = Integer.getInteger("camera.motion.pixelThreshold", 12);
+    private static final double MOTION_CHANGED_RATIO =
+            Double.parseDouble(System.getProperty("camera.motion.changedRatio", "0.02"));
+    private static final int MOTION_MAX_SKIP = Integer.getInteger("camera.motion.maxSkip", 30);
 
     /**
      * Constructor - Khởi tạo model và tracker
@@ -71,155 +130,537 @@ public class VehicleCounterService implements AutoCloseable {
         System.out.println("🚀 Initializing VehicleCounterService...");
         System.out.println("   IoU Threshold: " + iouThreshold);
         System.out.println("   Max Missing Frames: " + maxMissingFrames);
+        System.out.println("   Predictors: " + PREDICTOR_COUNT + " x " + INTRA_OP_THREADS + " intra-op threads");
+        System.out.println("   Batch: max " + BATCH_MAX_SIZE + " frames / " + BATCH_MAX_WAIT_MICROS + " µs");
+        System.out.println("   Detection interval: " + DETECTION_INTERVAL + (DETECTION_ADAPTIVE ? " (adaptive)" : ""));
+        System.out.println("   Track: confirm after " + TRACK_MIN_HITS + " hits, max " + TRACK_MAX_ACTIVE + " tracks");
+        System.out.println("   Decode: " + (DECODE_SUBSAMPLE
+                ? "JPEG subsampled to input size, pool " + DECODE_POOL_SIZE + " images per size"
+                : "full resolution"));
+        System.out.println("   Memory cap: " + (MEMORY_MAX_BYTES > 0
+                ? (MEMORY_MAX_BYTES >> 20) + " MB, reserve " + (MEMORY_SESSION_RESERVE_BYTES >> 20) + " MB per new camera"
+                : "unlimited"));
+        System.out.println("   ROI: " + (ROI_ENABLED ? new RegionOfInterest(ROI_CENTER_RATIO, ROI_HEIGHT_RATIO) : "full frame"));
+        System.out.println("   Motion gate: " + (MOTION_ENABLED
+                ? MOTION_THUMB_WIDTH + "px thumbnail, > " + MOTION_PIXEL_THRESHOLD + " levels on "
+                        + MOTION_CHANGED_RATIO * 100 + "% of band, infer at least every " + (MOTION_MAX_SKIP + 1) + " frames"
+                : "disabled"));
+
+        // PyTorch engine đọc số thread khi khởi tạo, phải set trước khi load model
+        if (System.getProperty("ai.djl.pytorch.num_threads") == null) {
+            System.setProperty("ai.djl.pytorch.num_threads", String.valueOf(INTRA_OP_THREADS));
+        }
+        if (System.getProperty("ai.djl.pytorch.num_interop_threads") == null) {
+            System.setProperty("ai.djl.pytorch.num_interop_threads", "1");
+        }
 
-        // Load YOLO model từ DJL Model Zoo
-        Criteria<Image, DetectedObjects> criteria = Criteria.builder()
-                .optApplication(Application.CV.OBJECT_DETECTION)
-                .setTypes(Image.class, DetectedObjects.class)
-                .optModelUrls("djl://ai.djl.pytorch/yolov5s")  // 's' → 'm'
-                .optEngine("PyTorch")
-                .optProgress(new ProgressBar())
-                .build();
-
-        ZooModel<Image, DetectedObjects> model = criteria.loadModel();
-        this.predictor = model.newPredictor();
-
-        // Khởi tạo tracker
-        this.tracker = new VehicleTracker(iouThreshold, maxMissingFrames);
+        // Mỗi input size dùng tới có 1 tier, số predictor chia đều giữa các tier
+        Set<Integer> inputSizes = new TreeSet<>(CAMERA_INPUT_SIZES.values());
+        inputSizes.add(INPUT_SIZE);
+        int predictorsPerTier = Math.max(1, PREDICTOR_COUNT / inputSizes.size());
+        boolean synthetic = SyntheticDetector.isEnabled();
+        if (synthetic) {
+            // Detector giả lập: đo throughput end-to-end không cần tải model
+            System.out.println("   Detector: synthetic (no model)");
+        }
+        for (int inputSize : inputSizes) {
+            // YOLO model dùng chung qua registry (chỉ load 1 lần mỗi process và input size)
+            InputTier tier = synthetic
+                    ? InputTier.synthetic(inputSize, predictorsPerTier, BATCH_MAX_SIZE, BATCH_MAX_WAIT_MICROS)
+                    : InputTier.load(inputSize, predictorsPerTier, BATCH_MAX_SIZE, BATCH_MAX_WAIT_MICROS);
+            tiers.put(inputSize, tier);
+            System.out.println("   " + tier);
+        }
 
-        // Image factory
+        // Warm-up trước khi nhận frame: frame thật đầu tiên không phải chịu JIT/native init
         this.imageFactory = ImageFactory.getInstance();
-
+        this.jpegDecoder = DECODE_SUBSAMPLE ? new JpegDecoder(DECODE_POOL_SIZE) : null;
+        warmUp();
+
+        // Mỗi camera có tracker riêng, tạo lazily khi frame đầu tiên tới
+        this.sessions = new CameraSessionRegistry(SESSION_STRIPES, SESSION_IDLE_TIMEOUT_SEC,
+                cameraId -> {
+                    VehicleTracker tracker = new VehicleTracker(iouThreshold, maxMissingFrames);
+                    tracker.setMinHits(TRACK_MIN_HITS);
+                    tracker.setMaxActiveTracks(TRACK_MAX_ACTIVE);
+                    CameraSession session = new CameraSession(cameraId, tracker, MAX_IN_FLIGHT_FRAMES);
+                    session.setInputSize(CAMERA_INPUT_SIZES.getOrDefault(cameraId, INPUT_SIZE));
+                    if (ROI_ENABLED) {
+                        session.setRegionOfInterest(new RegionOfInterest(ROI_CENTER_RATIO, ROI_HEIGHT_RATIO));
+                    }
+                    if (MOTION_ENABLED) {
+                        session.setMotionGate(new MotionGate(MOTION_THUMB_WIDTH, MOTION_PIXEL_THRESHOLD,
+                                MOTION_CHANGED_RATIO, MOTION_MAX_SKIP));
+                    }
+                    return session;
+                });
+
+        // Camera mới bị từ chối khi bộ nhớ dự kiến vượt cap của node
+        this.memoryAccountant = new MemoryAccountant(MEMORY_MAX_BYTES, MEMORY_SESSION_RESERVE_BYTES);
+        this.sessions.setAdmissionCheck(cameraId ->
+                memoryAccountant.admit(cameraId, sessions.snapshot(), getDecodePoolBytes()));
+
+        // Decode pool với hàng đợi giới hạn: đầy thì thread gọi tự decode (backpressure)
+        this.decodeExecutor = new ThreadPoolExecutor(DECODE_THREADS, DECODE_THREADS,
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(DECODE_QUEUE_SIZE),
+                namedDaemonThreads("frame-decode"), new ThreadPoolExecutor.CallerRunsPolicy());
+        this.trackExecutor = Executors.newFixedThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors() / 4), namedDaemonThreads("frame-track"));
+
+        System.out.println("   Memory after warm-up: " + NativeMemory.snapshot());
         System.out.println("✅ VehicleCounterService initialized successfully\n");
     }
 
     /**
-     * Nhận và xử lý 1 image frame
-     * Tự động tracking với các image trước đó
+     * Chạy inference trên ảnh trống với từng predictor (batch 1 và batch đầy)
+     */
+    private void warmUp() {
+        if (WARMUP_RUNS <= 0) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        Image blank = imageFactory.fromImage(
+                new BufferedImage(WARMUP_IMAGE_SIZE, WARMUP_IMAGE_SIZE, BufferedImage.TYPE_INT_RGB));
+        try {
+            for (InputTier tier : tiers.values()) {
+                tier.warmUp(blank, WARMUP_RUNS, BATCH_MAX_SIZE);
+            }
+        } catch (TranslateException e) {
+            // Warm-up lỗi không chặn khởi động, frame đầu tiên sẽ chịu chi phí init
+            System.err.println("⚠️ Model warm-up failed: " + e.getMessage());
+            return;
+        }
+        System.out.println("🔥 Warm-up: " + WARMUP_RUNS + " runs x " + tiers.size()
+                + " input tiers in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Parse "cam-1=320,cam-2=416", bỏ qua giá trị không phải bội số của 32
+     */
+    private static Map<String, Integer> parseInputSizes(String spec) {
+        Map<String, Integer> sizes = new HashMap<>();
+        CameraProperties.parse(spec).forEach((cameraId, value) -> {
+            try {
+                int size = Integer.parseInt(value);
+                if (size > 0 && size % 32 == 0) {
+                    sizes.put(cameraId, size);
+                } else {
+                    System.err.println("⚠️ Ignoring input size " + value + " for camera " + cameraId
+                            + " (must be a positive multiple of 32)");
+                }
+            } catch (NumberFormatException e) {
+                System.err.println("⚠️ Ignoring input size " + value + " for camera " + cameraId);
+            }
+        });
+        return sizes;
+    }
+
+    /**
+     * Nhận và xử lý 1 image frame cho camera mặc định
      *
      * @param imageBytes Byte array của image (JPG, PNG, etc.)
      * @return Số phương tiện tổng cộng đã đếm được
      */
     public int receiveImage(byte[] imageBytes) {
-        frameCount++;
+        return receiveImage(DEFAULT_CAMERA_ID, imageBytes);
+    }
+
+    /**
+     * Nhận và xử lý 1 image frame của 1 camera, chờ tới khi có kết quả
+     * Tự động tracking với các image trước đó của cùng camera
+     *
+     * @param cameraId Id của camera/stream
+     * @param imageBytes Byte array của image (JPG, PNG, etc.)
+     * @return Số phương tiện tổng cộng đã đếm được
+     */
+    public int receiveImage(String cameraId, byte[] imageBytes) {
+        return receiveImage(cameraId, ByteBuffer.wrap(imageBytes));
+    }
 
-        if (imageBytes.length == 0) {
-            int totalVehicleCount = tracker.getTotalVehicleCount();
-            tracker.reset();
-            return totalVehicleCount;
+    /**
+     * Nhận và xử lý 1 frame đọc trực tiếp từ buffer (heap hoặc direct), không copy
+     *
+     * @param cameraId Id của camera/stream
+     * @param frameData Buffer chứa image đã encode
+     * @return Số phương tiện tổng cộng đã đếm được
+     */
+    public int receiveImage(String cameraId, ByteBuffer frameData) {
+        CameraSession session = sessions.acquire(cameraId);
+        return awaitFrame(session, submitFrame(new FrameContext(session, frameData)));
+    }
 
-        }
+    /**
+     * Nhận và xử lý 1 frame pixel thô (bỏ qua decode JPEG)
+     *
+     * @param cameraId Id của camera/stream
+     * @param rawFrame Frame pixel thô
+     * @return Số phương tiện tổng cộng đã đếm được
+     */
+    public int receiveImage(String cameraId, RawFrame rawFrame) {
+        CameraSession session = sessions.acquire(cameraId);
+        return awaitFrame(session, submitFrame(new FrameContext(session, rawFrame)));
+    }
+
+    private int awaitFrame(CameraSession session, CompletableFuture<Integer> result) {
         try {
-            // Bước 1: Convert byte[] thành DJL Image
-            Image image = imageFactory.fromInputStream(
-                    new ByteArrayInputStream(imageBytes)
-            );
+            return result.join();
+        } catch (CompletionException e) {
+            return handleFrameError(session, e.getCause());
+        }
+    }
 
-            // Bước 2: Detect vehicles
-            DetectedObjects detectedObjects = predictor.predict(image);
+    /**
+     * Đưa 1 frame vào pipeline decode → infer → track
+     * Decode của frame N+1 chạy song song với inference của frame N,
+     * còn stage tracking luôn chạy theo đúng thứ tự frame của camera
+     *
+     * @return Future hoàn thành khi frame đã được tracking
+     */
+    public CompletableFuture<Integer> submitFrame(String cameraId, ByteBuffer frameData) {
+        CameraSession session = sessions.acquire(cameraId);
+        return submitFrame(new FrameContext(session, frameData))
+                .exceptionally(error -> handleFrameError(session, error));
+    }
 
-            // Bước 3: Filter chỉ lấy vehicles
-            List<Detection> vehicles = filterVehicles(detectedObjects);
+    /**
+     * Đưa 1 frame pixel thô vào pipeline (stage decode chỉ còn là chuyển pixel)
+     */
+    public CompletableFuture<Integer> submitFrame(String cameraId, RawFrame rawFrame) {
+        CameraSession session = sessions.acquire(cameraId);
+        return submitFrame(new FrameContext(session, rawFrame))
+                .exceptionally(error -> handleFrameError(session, error));
+    }
 
-            // Bước 4: Update tracker
-            tracker.update(vehicles, image.getHeight());
+    /**
+     * Như {@link #submitFrame(String, ByteBuffer)} nhưng không chặn thread gọi khi camera đã đủ frame đang xử lý
+     * (dùng cho stream gRPC: thread của transport không bao giờ phải chờ camera chậm)
+     *
+     * @return Future hoàn thành khi frame đã có slot và đã vào pipeline (có thể nhận frame tiếp theo),
+     *         giá trị là future hoàn thành khi frame đã được tracking (lỗi của frame được ghi log
+     *         và giữ nguyên trong future để caller báo lại cho client)
+     */
+    public CompletableFuture<CompletableFuture<Integer>> submitFrameWhenReady(String cameraId, ByteBuffer frameData) {
+        return submitWhenReady(new FrameContext(sessions.acquire(cameraId), frameData));
+    }
 
-            // Bước 5: In bảng thống kê
-            printTableRow(vehicles);
-            tracker.getTotalVehicleCount();
+    /**
+     * Frame pixel thô, không chặn thread gọi (xem {@link #submitFrameWhenReady(String, ByteBuffer)})
+     */
+    public CompletableFuture<CompletableFuture<Integer>> submitFrameWhenReady(String cameraId, RawFrame rawFrame) {
+        return submitWhenReady(new FrameContext(sessions.acquire(cameraId), rawFrame));
+    }
 
-            return tracker.getActiveVehicleCount();
+    private CompletableFuture<CompletableFuture<Integer>> submitWhenReady(FrameContext frame) {
+        CameraSession session = frame.getSession();
+        return session.acquireSlotAsync().thenApply(ignored -> startFrame(frame)
+                .whenComplete((value, error) -> {
+                    if (error != null) {
+                        logFrameError(session, error);
+                    }
+                }));
+    }
 
-        } catch (TranslateException e) {
-            System.err.println("❌ Error during detection: " + e.getMessage());
-            e.printStackTrace();
-            return tracker.getTotalVehicleCount();
+    private CompletableFuture<Integer> submitFrame(FrameContext frame) {
+        try {
+            frame.getSession().acquireSlot();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        return startFrame(frame);
+    }
+
+    /**
+     * Chạy frame qua pipeline, frame đã giữ 1 slot của camera (trả lại khi tracking xong)
+     */
+    private CompletableFuture<Integer> startFrame(FrameContext frame) {
+        CameraSession session = frame.getSession();
+
+        // Detect-every-N: frame bị bỏ qua thì không decode, không infer
+        if (!frame.isEndOfStream()) {
+            synchronized (session) {
+                frame.setDetectionSkipped(!session.scheduleDetection(DETECTION_INTERVAL));
+            }
+        }
+
+        // Stage 1: decode song song (frame rỗng / frame bỏ qua detection không cần decode)
+        CompletableFuture<FrameContext> decoded = frame.isEndOfStream() || frame.isDetectionSkipped()
+                ? CompletableFuture.completedFuture(frame)
+                : CompletableFuture.supplyAsync(() -> decode(frame), decodeExecutor);
+
+        // Motion gate theo đúng thứ tự frame: keyframe và số frame đã bỏ qua là trạng thái tuần tự của camera
+        CompletableFuture<FrameContext> gated = decoded;
+        MotionGate gate = session.getMotionGate();
+        if (gate != null) {
+            synchronized (session) {
+                gated = session.chainMotionGate(previous -> previous
+                        .handle((ignored, error) -> null)
+                        .thenCombine(decoded, (ignored, f) -> applyMotionGate(gate, f)));
+            }
+        }
+
+        // Stage 2: gửi vào batcher, frame không đổi theo motion gate không cần infer
+        CompletableFuture<FrameContext> inferred = gated.thenCompose(f ->
+                f.isEndOfStream() || f.isDetectionSkipped() || f.isMotionSkipped()
+                        ? CompletableFuture.completedFuture(f)
+                        : infer(f));
+
+        // Stage 3: tracking nối tiếp frame trước của cùng camera
+        CompletableFuture<Integer> result;
+        synchronized (session) {
+            result = session.chainTracking(previous -> previous
+                    .handle((ignored, error) -> null)
+                    .thenCombineAsync(inferred, (ignored, f) -> track(f), trackExecutor));
+        }
+        result.whenComplete((value, error) -> {
+            // Detector và tracker đã dùng xong ảnh: trả về pool cho frame sau
+            if (frame.getPooledImage() != null) {
+                jpegDecoder.release(frame.getPooledImage());
+                frame.setPooledImage(null);
+            }
+            session.releaseSlot();
+            StageMetrics metrics = session.getMetrics();
+            metrics.recordSince(StageMetrics.Stage.RESPONSE, frame.getReceivedNanos());
+            metrics.recordFrame();
+        });
+        return result;
+    }
+
+    private FrameContext decode(FrameContext frame) {
+        long start = System.nanoTime();
+        try {
+            if (frame.getRawFrame() != null) {
+                // Pixel thô: ghi thẳng vào ảnh, không decode JPEG
+                frame.setImage(imageFactory.fromImage(RawFrameConverter.toBufferedImage(frame.getRawFrame())));
+            } else if (jpegDecoder != null && JpegDecoder.isJpeg(frame.getData())) {
+                // JPEG: decode subsampling vừa đủ cho detector vào ảnh lấy từ pool
+                BufferedImage image = jpegDecoder.decode(frame.getData(),
+                        frame.getSession().getInputSize(), minDecodeHeight(frame.getSession()));
+                frame.setPooledImage(image);
+                frame.setImage(imageFactory.fromImage(image));
+            } else {
+                // Decode thẳng từ buffer thành DJL Image
+                frame.setImage(imageFactory.fromInputStream(frame.openStream()));
+            }
+            applyRegionOfInterest(frame);
+            recordFrameSize(frame);
+            frame.getSession().getMetrics().recordSince(StageMetrics.Stage.DECODE, start);
+            return frame;
         } catch (IOException e) {
-            System.err.println("❌ Error reading image: " + e.getMessage());
-            e.printStackTrace();
-            return tracker.getTotalVehicleCount();
+            throw new UncheckedIOException(e);
         }
     }
 
+    private static void recordFrameSize(FrameContext frame) {
+        Image image = frame.getImage();
+        long decodedBytes = image.getWrappedImage() instanceof BufferedImage buffered
+                ? MemoryAccountant.imageBytes(buffered)
+                : (long) image.getWidth() * image.getHeight() * 3;
+        frame.getSession().recordFrameSize(frame.getData().remaining(), frame.getData().isDirect(), decodedBytes);
+    }
+
     /**
-     * Lọc chỉ lấy vehicles với confidence > threshold
+     * Chiều cao frame tối thiểu sau decode: vùng ROI đưa vào detector vẫn không nhỏ hơn input size
      */
-    private List<Detection> filterVehicles(DetectedObjects detectedObjects) {
-        List<Detection> vehicles = new ArrayList<>();
-
-        List<DetectedObjects.DetectedObject> items = detectedObjects.items();
-
-        for (DetectedObjects.DetectedObject obj : items) {
-            String className = obj.getClassName();
-            double confidence = obj.getProbability();
-
-            if (VEHICLE_CLASSES.contains(className) && confidence >= CONFIDENCE_THRESHOLD) {
-                Detection detection = new Detection(
-                        obj.getBoundingBox(),
-                        className,
-                        confidence
-                );
-                vehicles.add(detection);
+    private static int minDecodeHeight(CameraSession session) {
+        RegionOfInterest roi = session.getRegionOfInterest();
+        int inputSize = session.getInputSize();
+        return roi != null ? (int) Math.ceil(inputSize / roi.getHeightRatio()) : inputSize;
+    }
+
+    private void applyRegionOfInterest(FrameContext frame) {
+        RegionOfInterest roi = frame.getSession().getRegionOfInterest();
+        if (roi != null) {
+            Image image = frame.getImage();
+            frame.setCrop(roi.cropFor(image.getWidth(), image.getHeight()));
+        }
+    }
+
+    /**
+     * So thumbnail độ sáng của dải counting line với frame detect gần nhất, đánh dấu frame không cần infer
+     * Chạy trong chuỗi motion gate của camera (từng frame một, theo thứ tự frame tới)
+     */
+    private static FrameContext applyMotionGate(MotionGate gate, FrameContext frame) {
+        if (frame.isEndOfStream()) {
+            // Stream mới bắt đầu sau frame rỗng: quên keyframe của stream cũ
+            gate.reset();
+            return frame;
+        }
+        if (frame.isDetectionSkipped() || !(frame.getImage().getWrappedImage() instanceof BufferedImage image)) {
+            return frame;
+        }
+        int bandTop;
+        int bandHeight;
+        RegionOfInterest.Crop crop = frame.getCrop();
+        if (crop != null) {
+            bandTop = crop.getY();
+            bandHeight = crop.getHeight();
+        } else {
+            // Counting line ở giữa frame (VehicleTracker)
+            bandHeight = Math.max(1, (int) (image.getHeight() * MOTION_BAND_RATIO));
+            bandTop = (image.getHeight() - bandHeight) / 2;
+        }
+        frame.setMotionSkipped(!gate.shouldInfer(image, bandTop, bandHeight));
+        return frame;
+    }
+
+    private CompletableFuture<FrameContext> infer(FrameContext frame) {
+        try {
+            // Detect vehicles (gom batch với frame của các camera khác)
+            long start = System.nanoTime();
+            InputTier tier = tierFor(frame.getSession());
+            tier.recordFrame();
+            return tier.getBatcher().submit(frame.getInputImage()).thenApply(detectedObjects -> {
+                frame.getSession().getMetrics().recordSince(StageMetrics.Stage.INFERENCE, start);
+                // Map box trong vùng ROI về tọa độ cả frame
+                frame.setDetectedObjects(frame.getCrop() != null
+                        ? frame.getCrop().remap(detectedObjects)
+                        : detectedObjects);
+                return frame;
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private int track(FrameContext frame) {
+        CameraSession session = frame.getSession();
+        synchronized (session) {
+            VehicleTracker tracker = session.getTracker();
+            session.nextFrame();
+
+            if (frame.isEndOfStream()) {
+                int totalVehicleCount = tracker.getTotalVehicleCount();
+                tracker.reset();
+                return totalVehicleCount;
             }
+
+            StageMetrics metrics = session.getMetrics();
+            if (frame.isMotionSkipped()) {
+                // Cảnh không đổi: giữ nguyên track tại vị trí đã detect, không tính missing
+                long start = System.nanoTime();
+                tracker.hold();
+                metrics.recordSince(StageMetrics.Stage.TRACK, start);
+                session.setLastImageHeight(frame.getImageHeight());
+                session.getDetections().clear();
+                printTableRow(session, session.getDetections());
+                return tracker.getActiveVehicleCount();
+            }
+
+            if (frame.isDetectionSkipped()) {
+                // Không detect: tiến track theo vận tốc, vẫn kiểm tra counting line
+                long start = System.nanoTime();
+                tracker.advance(session.getLastImageHeight());
+                metrics.recordSince(StageMetrics.Stage.TRACK, start);
+                session.getDetections().clear();
+                printTableRow(session, session.getDetections());
+                return tracker.getActiveVehicleCount();
+            }
+
+            // Filter chỉ lấy vehicles
+            long start = System.nanoTime();
+            DetectionBuffer vehicles = session.getDetections();
+            VehicleFilter.filter(frame.getDetectedObjects(), vehicles);
+            long filtered = System.nanoTime();
+            metrics.recordNanos(StageMetrics.Stage.FILTER, filtered - start);
+
+            // Update tracker
+            tracker.update(vehicles, frame.getImageHeight());
+            metrics.recordSince(StageMetrics.Stage.TRACK, filtered);
+            session.setLastImageHeight(frame.getImageHeight());
+            session.setDetectionRequired(DETECTION_ADAPTIVE && tracker.needsDetection(MIN_STABLE_AGE));
+
+            // In bảng thống kê
+            printTableRow(session, vehicles);
+
+            return tracker.getActiveVehicleCount();
         }
+    }
 
-        return vehicles;
+    private int handleFrameError(CameraSession session, Throwable error) {
+        logFrameError(session, error);
+        synchronized (session) {
+            return session.getTracker().getTotalVehicleCount();
+        }
     }
 
+    private static void logFrameError(CameraSession session, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                ? error.getCause()
+                : error;
+        String cameraId = session.getCameraId();
+        if (cause instanceof UncheckedIOException) {
+            AsyncLog.log(cameraId, Level.ERROR, "❌ Error reading image: %s", cause.getCause().getMessage(), cause);
+        } else {
+            AsyncLog.log(cameraId, Level.ERROR, "❌ Error during detection: %s", cause.getMessage(), cause);
+        }
+    }
 
+    private static ThreadFactory namedDaemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + counter.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        };
+    }
 
     /**
      * In header của bảng
      */
-    private void printTableHeader() {
-        System.out.println("\n" + "=".repeat(100));
-        System.out.printf("| %-8s | %-8s | %-35s | %-35s |%n",
-                "Frame", "Total", "Current Vehicle", "Active Vehicle");
-        System.out.println("=".repeat(100));
-        headerPrinted = true;
+    private void printTableHeader(CameraSession session) {
+        AsyncLog.logv(session.getCameraId(), Level.INFO,
+                "%n" + TABLE_RULE + "%nCamera: %s%n| %-8s | %-8s | %-35s | %-35s |%n" + TABLE_RULE,
+                session.getCameraId(), "Frame", "Total", "Current Vehicle", "Active Vehicle");
+        session.setHeaderPrinted(true);
     }
 
     /**
-     * In một dòng trong bảng
+     * In một dòng trong bảng (qua AsyncLog, chỉ build string khi level INFO bật và frame được sample)
      */
-    private void printTableRow(List<Detection> currentDetections) {
-        if (!headerPrinted) {
-            printTableHeader();
+    private void printTableRow(CameraSession session, DetectionBuffer currentDetections) {
+        if (!AsyncLog.isSampled(session.getCameraId(), Level.INFO, session.getFrameCount())) {
+            return;
+        }
+        if (!session.isHeaderPrinted()) {
+            printTableHeader(session);
         }
 
+        VehicleTracker tracker = session.getTracker();
         int totalCount = tracker.getTotalVehicleCount();
-        List<TrackedVehicle> activeVehicles = tracker.getActiveVehicles();
+        TrackStore activeVehicles = tracker.getTracks();
 
         // Format Current Vehicle
-        String currentVehicleStr = formatVehicleList(currentDetections);
+        String currentVehicleStr = formatClassCounts(currentDetections.className, currentDetections.size());
 
         // Format Active Vehicle
-        String activeVehicleStr = formatTrackedVehicleList(activeVehicles);
+        String activeVehicleStr = formatClassCounts(activeVehicles.className, activeVehicles.size());
 
-        System.out.printf("| %-8d | %-8d | %-35s | %-35s |%n",
-                frameCount,
+        AsyncLog.log(session.getCameraId(), Level.INFO, "| %-8d | %-8d | %-35s | %-35s |",
+                session.getFrameCount(),
                 totalCount,
                 currentVehicleStr,
                 activeVehicleStr);
     }
 
     /**
-     * Format danh sách detection thành string
+     * Format danh sách vehicle (theo class) thành string: "3 (2 car, 1 bus)"
      */
-    private String formatVehicleList(List<Detection> detections) {
-        if (detections.isEmpty()) {
+    private String formatClassCounts(String[] classNames, int count) {
+        if (count == 0) {
             return "0";
         }
 
         // Đếm theo loại
         Map<String, Integer> counts = new HashMap<>();
-        for (Detection d : detections) {
-            counts.put(d.getClassName(), counts.getOrDefault(d.getClassName(), 0) + 1);
+        for (int i = 0; i < count; i++) {
+            counts.put(classNames[i], counts.getOrDefault(classNames[i], 0) + 1);
         }
 
         // Build string
         StringBuilder sb = new StringBuilder();
-        sb.append(detections.size()).append(" (");
+        sb.append(count).append(" (");
 
         List<String> parts = new ArrayList<>();
         for (Map.Entry<String, Integer> entry : counts.entrySet()) {
@@ -232,62 +673,115 @@ public class VehicleCounterService implements AutoCloseable {
     }
 
     /**
-     * Format danh sách tracked vehicle thành string
+     * Lấy tổng số phương tiện đã đếm (camera mặc định)
      */
-    private String formatTrackedVehicleList(List<TrackedVehicle> vehicles) {
-        if (vehicles.isEmpty()) {
-            return "0";
-        }
+    public int getTotalVehicleCount() {
+        return getTotalVehicleCount(DEFAULT_CAMERA_ID);
+    }
 
-        // Đếm theo loại
-        Map<String, Integer> counts = new HashMap<>();
-        for (TrackedVehicle v : vehicles) {
-            String className = v.getClassName();
-            counts.put(className, counts.getOrDefault(className, 0) + 1);
+    /**
+     * Lấy tổng số phương tiện đã đếm của 1 camera
+     */
+    public int getTotalVehicleCount(String cameraId) {
+        CameraSession session = sessions.find(cameraId);
+        if (session == null) {
+            return 0;
         }
+        synchronized (session) {
+            return session.getTracker().getTotalVehicleCount();
+        }
+    }
 
-        // Build string
-        StringBuilder sb = new StringBuilder();
-        sb.append(vehicles.size()).append(" (");
+    /**
+     * Lấy số phương tiện đang active trong frame (camera mặc định)
+     */
+    public int getActiveVehicleCount() {
+        CameraSession session = sessions.find(DEFAULT_CAMERA_ID);
+        if (session == null) {
+            return 0;
+        }
+        synchronized (session) {
+            return session.getTracker().getActiveVehicleCount();
+        }
+    }
 
-        List<String> parts = new ArrayList<>();
-        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
-            parts.add(entry.getValue() + " " + entry.getKey());
+    /**
+     * Lấy danh sách vehicles đang active (camera mặc định)
+     */
+    public List<TrackedVehicle> getActiveVehicles() {
+        CameraSession session = sessions.find(DEFAULT_CAMERA_ID);
+        if (session == null) {
+            return new ArrayList<>();
         }
-        sb.append(String.join(", ", parts));
-        sb.append(")");
+        synchronized (session) {
+            return session.getTracker().getActiveVehicles();
+        }
+    }
 
-        return sb.toString();
+    /**
+     * Lấy session registry
+     */
+    public CameraSessionRegistry getSessions() {
+        return sessions;
     }
 
     /**
-     * Lấy tổng số phương tiện đã đếm
+     * Tier input size của camera (tier mặc định nếu size của camera không có tier)
      */
-    public int getTotalVehicleCount() {
-        return tracker.getTotalVehicleCount();
+    private InputTier tierFor(CameraSession session) {
+        InputTier tier = tiers.get(session.getInputSize());
+        return tier != null ? tier : tiers.get(INPUT_SIZE);
     }
 
     /**
-     * Lấy số phương tiện đang active trong frame
+     * Các tier input size đang chạy (theo kích thước tăng dần)
      */
-    public int getActiveVehicleCount() {
-        return tracker.getActiveVehicleCount();
+    public Collection<InputTier> getInputTiers() {
+        return Collections.unmodifiableCollection(tiers.values());
     }
 
     /**
-     * Lấy danh sách vehicles đang active
+     * Số frame đang chờ trong hàng đợi inference (tổng các tier, chung cho mọi camera)
      */
-    public List<TrackedVehicle> getActiveVehicles() {
-        return tracker.getActiveVehicles();
+    public int getInferenceQueueDepth() {
+        int depth = 0;
+        for (InputTier tier : tiers.values()) {
+            depth += tier.getBatcher().getQueueDepth();
+        }
+        return depth;
+    }
+
+    /**
+     * Bộ nhớ của node theo từng nguồn (model, buffer inference, pool decode, các camera)
+     */
+    public MemoryAccountant.Usage getMemoryUsage() {
+        return memoryAccountant.usage(sessions.snapshot(), getDecodePoolBytes());
+    }
+
+    public MemoryAccountant getMemoryAccountant() {
+        return memoryAccountant;
+    }
+
+    private long getDecodePoolBytes() {
+        return jpegDecoder != null ? jpegDecoder.getAllocatedBytes() : 0;
     }
 
     /**
-     * Reset service về trạng thái ban đầu
+     * Số frame đang chờ thread decode
+     */
+    public int getDecodeQueueDepth() {
+        return decodeExecutor.getQueue().size();
+    }
+
+    /**
+     * Reset service về trạng thái ban đầu (tất cả camera)
      */
     public void reset() {
-        tracker.reset();
-        frameCount = 0;
-        headerPrinted = false;
+        for (CameraSession session : sessions.snapshot()) {
+            synchronized (session) {
+                session.reset();
+            }
+        }
         System.out.println("🔄 Service reset");
     }
 
@@ -296,9 +790,13 @@ public class VehicleCounterService implements AutoCloseable {
      */
     @Override
     public void close() {
-        if (predictor != null) {
-            predictor.close();
+        decodeExecutor.shutdownNow();
+        trackExecutor.shutdownNow();
+        for (InputTier tier : tiers.values()) {
+            tier.close();
         }
+        sessions.close();
+        AsyncLog.flush(1000);
         System.out.println("\n" + "=".repeat(100));
         System.out.println("👋 VehicleCounterService closed");
     }
@@ -307,11 +805,35 @@ public class VehicleCounterService implements AutoCloseable {
      * In summary cuối cùng
      */
     public void printFinalSummary() {
+        // In hết log đang chờ trước để summary không bị chen giữa
+        AsyncLog.flush(1000);
         System.out.println("\n" + "=".repeat(100));
         System.out.println("📈 FINAL SUMMARY");
         System.out.println("=".repeat(100));
-        System.out.println("Total frames processed: " + frameCount);
-        System.out.println("Total vehicles counted: " + tracker.getTotalVehicleCount());
+        for (CameraSession session : sessions.snapshot()) {
+            synchronized (session) {
+                System.out.println("Camera: " + session.getCameraId());
+                System.out.println("   Total frames processed: " + session.getFrameCount());
+                System.out.println("   Total vehicles counted: " + session.getTracker().getTotalVehicleCount());
+                System.out.println("   Input size: " + session.getInputSize());
+                if (session.getMotionGate() != null) {
+                    System.out.println("   Frames skipped by motion gate: " + session.getMotionGate().getTotalSkipped());
+                }
+            }
+        }
+        if (jpegDecoder != null) {
+            System.out.println("Decode pool: " + jpegDecoder.getAllocatedCount() + " images allocated, "
+                    + jpegDecoder.getReusedCount() + " reused");
+        }
+        System.out.println("Memory: " + getMemoryUsage());
+        if (memoryAccountant.getRefusedSessions() > 0) {
+            System.out.println("Camera sessions refused (memory cap): " + memoryAccountant.getRefusedSessions());
+        }
+        for (InputTier tier : tiers.values()) {
+            System.out.printf("Tier %d: %d frames x %.2f GFLOPs = %.1f GFLOPs (%.0f%% of 640 cost)%n",
+                    tier.getInputSize(), tier.getFrames(), tier.getGflopsPerFrame(),
+                    tier.getTotalGflops(), tier.getRelativeCost() * 100);
+        }
         System.out.println("=".repeat(100) + "\n");
     }
 }
\ No newline at end of file
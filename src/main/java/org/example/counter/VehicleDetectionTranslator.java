@@ -0,0 +1,263 @@
+package org.example.counter;
+
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.output.BoundingBox;
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.modality.cv.output.Rectangle;
+import ai.djl.modality.cv.util.NDImageUtils;
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.DataType;
+import ai.djl.ndarray.types.Shape;
+import ai.djl.translate.Translator;
+import ai.djl.translate.TranslatorContext;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Translator YOLOv5 chỉ giữ vehicle: decode thẳng tensor output [N, 85] (cx, cy, w, h, objectness, 80 class)
+ * Candidate giữ trong mảng primitive, NMS chạy trên candidate vehicle, chỉ box còn lại sau NMS
+ * mới được tạo object DetectedObject (80 class COCO không bao giờ thành list đầy đủ)
+ *
+ * Box trả về normalized [0, 1] theo ảnh đầu vào như translator mặc định của model zoo
+ *
+ * Input/output đi qua {@link TensorBuffers} của predictor: resize + chuẩn hóa trên buffer dùng lại,
+ * tensor input tạo trên direct buffer sẵn có, output đọc vào mảng dùng lại (không cấp phát mỗi frame)
+ *
+ * Mảng candidate/NMS là state của translator: mỗi predictor cần translator riêng ({@link ModelRegistry#newTranslator(int)})
+ */
+public class VehicleDetectionTranslator implements Translator<Image, DetectedObjects> {
+
+    // Index class COCO của vehicle → tên class (trùng VehicleFilter)
+    private static final int[] VEHICLE_CLASS_INDICES = {2, 3, 5, 7};
+    private static final String[] VEHICLE_CLASS_NAMES = {"car", "motorcycle", "bus", "truck"};
+
+    // 4 tọa độ + objectness trước các class score
+    private static final int CLASS_OFFSET = 5;
+
+    // Vị trí của ảnh tiếp theo trong batch (attachment của context mỗi lần predict)
+    private static final String SLOT_ATTACHMENT = "vehicle.tensorSlot";
+    private static final float SCALE = 1f / 255f;
+
+    private final int width;
+    private final int height;
+    private final float threshold;
+    private final float nmsThreshold;
+
+    // Dùng lại giữa các frame (predictor chạy 1 frame 1 lúc), chỉ nới rộng khi cần
+    private final Candidates candidates = new Candidates();
+
+    /**
+     * @param width Chiều rộng ảnh đầu vào model
+     * @param height Chiều cao ảnh đầu vào model
+     * @param threshold Score tối thiểu (objectness x class probability)
+     * @param nmsThreshold IoU để loại box trùng cùng class
+     */
+    public VehicleDetectionTranslator(int width, int height, double threshold, double nmsThreshold) {
+        this.width = width;
+        this.height = height;
+        this.threshold = (float) threshold;
+        this.nmsThreshold = (float) nmsThreshold;
+    }
+
+    @Override
+    public NDList processInput(TranslatorContext ctx, Image input) {
+        if (!(input.getWrappedImage() instanceof BufferedImage source)) {
+            return new NDList(toTensor(ctx, input));
+        }
+
+        // Resize vào ảnh BGR dùng lại rồi ghi thẳng RGB/255 dạng CHW vào input slot
+        TensorBuffers buffers = TensorBuffers.current();
+        int slot = nextSlot(ctx);
+        BufferedImage resized = buffers.resize(source, width, height);
+        byte[] bgr = ((DataBufferByte) resized.getRaster().getDataBuffer()).getData();
+        int plane = width * height;
+        ByteBuffer tensor = buffers.input(slot, 3 * plane);
+        FloatBuffer pixels = buffers.inputView(slot);
+        for (int p = 0, o = 0; p < plane; p++, o += 3) {
+            pixels.put(p, (bgr[o + 2] & 0xFF) * SCALE);
+            pixels.put(plane + p, (bgr[o + 1] & 0xFF) * SCALE);
+            pixels.put(2 * plane + p, (bgr[o] & 0xFF) * SCALE);
+        }
+        return new NDList(ctx.getNDManager().create(tensor, new Shape(3, height, width), DataType.FLOAT32));
+    }
+
+    /**
+     * Ảnh không phải BufferedImage: tiền xử lý bằng NDArray, mảng trung gian đóng ngay trong scope của frame
+     */
+    private NDArray toTensor(TranslatorContext ctx, Image input) {
+        try (NDManager frame = ctx.getNDManager().newSubManager()) {
+            NDArray array = input.toNDArray(frame, Image.Flag.COLOR);
+            array = NDImageUtils.toTensor(NDImageUtils.resize(array, width, height));
+            array.attach(ctx.getNDManager());
+            return array;
+        }
+    }
+
+    private static int nextSlot(TranslatorContext ctx) {
+        Object attachment = ctx.getAttachment(SLOT_ATTACHMENT);
+        int slot = attachment instanceof Integer value ? value : 0;
+        ctx.setAttachment(SLOT_ATTACHMENT, slot + 1);
+        return slot;
+    }
+
+    @Override
+    public DetectedObjects processOutput(TranslatorContext ctx, NDList list) {
+        NDArray output = list.get(0);
+        long[] shape = output.getShape().getShape();
+        int columns = (int) shape[shape.length - 1];
+        if (columns < CLASS_OFFSET + VEHICLE_CLASS_INDICES[VEHICLE_CLASS_INDICES.length - 1] + 1) {
+            throw new IllegalStateException("Unexpected YOLOv5 output shape: " + output.getShape());
+        }
+        // Đọc output vào mảng dùng lại của predictor (không tạo float[] mới mỗi frame)
+        int floats = Math.toIntExact(output.size());
+        float[] data = TensorBuffers.current().output(floats);
+        output.toByteBuffer().order(ByteOrder.nativeOrder()).asFloatBuffer().get(data, 0, floats);
+        int rows = floats / columns;
+        decode(data, rows, columns);
+        return candidates.suppress(nmsThreshold);
+    }
+
+    /**
+     * Giữ các hàng có class cao nhất là vehicle và score >= threshold
+     */
+    private void decode(float[] data, int rows, int columns) {
+        candidates.clear();
+        for (int r = 0; r < rows; r++) {
+            int base = r * columns;
+            float objectness = data[base + 4];
+            // score = objectness * class probability <= objectness
+            if (objectness < threshold) {
+                continue;
+            }
+
+            // Class cao nhất trên cả 80 class (vd xe máy có người ngồi vẫn thuộc class motorcycle)
+            int bestClass = 0;
+            float bestProbability = data[base + CLASS_OFFSET];
+            for (int c = 1; c < columns - CLASS_OFFSET; c++) {
+                float probability = data[base + CLASS_OFFSET + c];
+                if (probability > bestProbability) {
+                    bestProbability = probability;
+                    bestClass = c;
+                }
+            }
+            int vehicle = vehicleSlot(bestClass);
+            float score = objectness * bestProbability;
+            if (vehicle < 0 || score < threshold) {
+                continue;
+            }
+
+            float cx = data[base];
+            float cy = data[base + 1];
+            float w = data[base + 2];
+            float h = data[base + 3];
+            candidates.add(cx - w / 2, cy - h / 2, cx + w / 2, cy + h / 2, score, vehicle);
+        }
+    }
+
+    private static int vehicleSlot(int classIndex) {
+        for (int i = 0; i < VEHICLE_CLASS_INDICES.length; i++) {
+            if (VEHICLE_CLASS_INDICES[i] == classIndex) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Candidate vehicle dạng mảng song song (x1, y1, x2, y2 theo pixel ảnh đầu vào)
+     */
+    private final class Candidates {
+        private float[] x1 = new float[64];
+        private float[] y1 = new float[64];
+        private float[] x2 = new float[64];
+        private float[] y2 = new float[64];
+        private float[] score = new float[64];
+        private int[] vehicle = new int[64];
+        private long[] order = new long[64];
+        private boolean[] suppressed = new boolean[64];
+        private int size;
+
+        void clear() {
+            size = 0;
+        }
+
+        void add(float left, float top, float right, float bottom, float candidateScore, int vehicleSlot) {
+            if (size == score.length) {
+                int capacity = size * 2;
+                x1 = Arrays.copyOf(x1, capacity);
+                y1 = Arrays.copyOf(y1, capacity);
+                x2 = Arrays.copyOf(x2, capacity);
+                y2 = Arrays.copyOf(y2, capacity);
+                score = Arrays.copyOf(score, capacity);
+                vehicle = Arrays.copyOf(vehicle, capacity);
+                order = new long[capacity];
+                suppressed = new boolean[capacity];
+            }
+            x1[size] = left;
+            y1[size] = top;
+            x2[size] = right;
+            y2[size] = bottom;
+            score[size] = candidateScore;
+            vehicle[size] = vehicleSlot;
+            size++;
+        }
+
+        /**
+         * NMS theo từng class: duyệt theo score giảm dần, bỏ box cùng class có IoU > nmsThreshold
+         */
+        DetectedObjects suppress(float iouThreshold) {
+            // Score dương nên bit pattern float tăng cùng giá trị: sort (score, index) trong 1 mảng long
+            for (int i = 0; i < size; i++) {
+                order[i] = ((long) Float.floatToIntBits(score[i]) << 32) | i;
+            }
+            Arrays.sort(order, 0, size);
+            Arrays.fill(suppressed, 0, size, false);
+
+            List<String> classNames = new ArrayList<>();
+            List<Double> probabilities = new ArrayList<>();
+            List<BoundingBox> boxes = new ArrayList<>();
+            for (int k = size - 1; k >= 0; k--) {
+                int i = (int) order[k];
+                if (suppressed[i]) {
+                    continue;
+                }
+                for (int m = k - 1; m >= 0; m--) {
+                    int j = (int) order[m];
+                    if (!suppressed[j] && vehicle[j] == vehicle[i] && iou(i, j) > iouThreshold) {
+                        suppressed[j] = true;
+                    }
+                }
+
+                float left = Math.max(0f, x1[i]);
+                float top = Math.max(0f, y1[i]);
+                float right = Math.min(width, x2[i]);
+                float bottom = Math.min(height, y2[i]);
+                classNames.add(VEHICLE_CLASS_NAMES[vehicle[i]]);
+                probabilities.add((double) score[i]);
+                boxes.add(new Rectangle(left / width, top / height,
+                        (right - left) / width, (bottom - top) / height));
+            }
+            return new DetectedObjects(classNames, probabilities, boxes);
+        }
+
+        private float iou(int a, int b) {
+            float interWidth = Math.min(x2[a], x2[b]) - Math.max(x1[a], x1[b]);
+            float interHeight = Math.min(y2[a], y2[b]) - Math.max(y1[a], y1[b]);
+            if (interWidth <= 0 || interHeight <= 0) {
+                return 0;
+            }
+            float intersection = interWidth * interHeight;
+            float union = (x2[a] - x1[a]) * (y2[a] - y1[a]) + (x2[b] - x1[b]) * (y2[b] - y1[b]) - intersection;
+            return union <= 0 ? 0 : intersection / union;
+        }
+    }
+}
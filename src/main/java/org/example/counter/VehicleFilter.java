@@ -0,0 +1,51 @@
+package org.example.counter;
+
+import ai.djl.modality.cv.output.DetectedObjects;
+import ai.djl.modality.cv.output.Rectangle;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Lọc kết quả detect, chỉ giữ vehicles đủ confidence
+ * Tách khỏi VehicleCounterService để benchmark/chạy không cần load model
+ */
+public final class VehicleFilter {
+
+    // Vehicle classes trong COCO dataset
+    private static final Set<String> VEHICLE_CLASSES = new HashSet<>(
+            Arrays.asList("car", "motorcycle", "bus", "truck")
+    );
+
+    // Confidence threshold cho detection
+    public static final double CONFIDENCE_THRESHOLD = 0.1;
+
+    private VehicleFilter() {
+    }
+
+    public static boolean isVehicleClass(String className) {
+        return VEHICLE_CLASSES.contains(className);
+    }
+
+    /**
+     * Lọc chỉ lấy vehicles với confidence > threshold, ghi vào buffer (buffer được clear trước)
+     */
+    public static void filter(DetectedObjects detectedObjects, DetectionBuffer vehicles) {
+        vehicles.clear();
+
+        List<DetectedObjects.DetectedObject> items = detectedObjects.items();
+
+        for (DetectedObjects.DetectedObject obj : items) {
+            String className = obj.getClassName();
+            double confidence = obj.getProbability();
+
+            if (VEHICLE_CLASSES.contains(className) && confidence >= CONFIDENCE_THRESHOLD) {
+                Rectangle rect = obj.getBoundingBox().getBounds();
+                vehicles.add(rect.getX(), rect.getY(), rect.getWidth(), rect.getHeight(),
+                        className, confidence);
+            }
+        }
+    }
+}
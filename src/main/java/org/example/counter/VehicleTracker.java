@@ -1,33 +1,47 @@
 package org.example.counter;
 
-import ai.djl.modality.cv.output.BoundingBox;
 import ai.djl.modality.cv.output.Rectangle;
+import org.example.counter.AsyncLog.Level;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
 
 /**
  * Tracker với counting line ở giữa khung hình
  */
 public class VehicleTracker {
-    private final List<TrackedVehicle> activeVehicles;
+    // Các track đang active, lưu dạng mảng song song để update không cấp phát object
+    private final TrackStore tracks;
     private int nextId;
     private int totalVehicleCount;
 
-    // Thêm set để lưu trữ các vehicle đã đi qua line
-    private final Set<Integer> countedVehicles;
-
     // Tham số tracking
     private final double iouThreshold;
     private final int maxMissingFrames;
     private final double missingIouThreshold;
 
+    // Vòng đời track: tentative cần minHits lần detect mới được xác nhận,
+    // tối đa maxActiveTracks track (đầy thì evict track tentative / mất lâu nhất)
+    private int minHits = 1;
+    private int maxActiveTracks = Integer.MAX_VALUE;
+    private long droppedDetections = 0;
+
+    // Ghép track/detection, buffer dùng lại giữa các frame
+    private final TrackAssigner assigner = new TrackAssigner();
+    private final BoxBuffer trackBoxes = new BoxBuffer(64);
+    private final DetectionBuffer listDetections = new DetectionBuffer(64);
+    private float[] trackThresholds = new float[64];
+    private int[] trackToDetection = new int[64];
+    private boolean[] matchedDetections = new boolean[64];
+
     // Vị trí counting line (tọa độ Y của đường ngang)
     private double countingLineY;
     private boolean countingLineEnabled = true;
 
+    // Camera của tracker, dùng cho level/sampling của log
+    private String cameraId;
+
     /**
      * Constructor với tham số mặc định
      */
@@ -39,10 +53,9 @@ public class VehicleTracker {
      * Constructor với tham số tùy chỉnh
      */
     public VehicleTracker(double iouThreshold, int maxMissingFrames) {
-        this.activeVehicles = new ArrayList<>();
+        this.tracks = new TrackStore(64);
         this.nextId = 1;
         this.totalVehicleCount = 0;
-        this.countedVehicles = new HashSet<>();
 
         this.iouThreshold = iouThreshold;
         this.maxMissingFrames = maxMissingFrames;
@@ -62,162 +75,254 @@ public class VehicleTracker {
      * Update tracker với detections mới và thực hiện counting
      */
     public void update(List<Detection> detections, double imageHeight) {
-        // Cập nhật vị trí counting line nếu có imageHeight
-        if (imageHeight > 0) {
-            this.countingLineY = imageHeight / 2;
+        listDetections.clear();
+        for (Detection detection : detections) {
+            Rectangle rect = detection.getBoundingBox().getBounds();
+            listDetections.add(rect.getX(), rect.getY(), rect.getWidth(), rect.getHeight(),
+                    detection.getClassName(), detection.getConfidence());
         }
+        update(listDetections, imageHeight);
+    }
+
+    /**
+     * Update tracker với detections dạng buffer (không cấp phát object)
+     */
+    public void update(DetectionBuffer detections, double imageHeight) {
+        updateCountingLine(imageHeight);
+        int trackCount = tracks.size();
+        int detectionCount = detections.size();
 
         // Bước 1: Tăng missing counter cho tất cả vehicles
-        for (TrackedVehicle vehicle : activeVehicles) {
-            vehicle.incrementMissingFrames();
+        for (int i = 0; i < trackCount; i++) {
+            tracks.missing[i]++;
         }
 
-        // Bước 2: Match detections với tracked vehicles
-        boolean[] matchedDetections = new boolean[detections.size()];
-        boolean[] matchedVehicles = new boolean[activeVehicles.size()];
-
-        // Tìm best match cho mỗi vehicle
-        for (int i = 0; i < activeVehicles.size(); i++) {
-            TrackedVehicle vehicle = activeVehicles.get(i);
-
-            double bestIoU = 0;
-            int bestDetectionIdx = -1;
-
-            BoundingBox vehicleBox = vehicle.getMissingFrames() > 0
-                    ? vehicle.getPredictedBoundingBox()
-                    : vehicle.getBoundingBox();
-
-            double currentIouThreshold = vehicle.getMissingFrames() > 0
+        // Bước 2: Match detections với tracked vehicles (ghép tối ưu theo IoU, gate bằng lưới)
+        ensureFrameCapacity(trackCount, detectionCount);
+        trackBoxes.clear();
+        for (int i = 0; i < trackCount; i++) {
+            tracks.appendPredictedBox(i, trackBoxes);
+            trackThresholds[i] = (float) (tracks.missing[i] > 0
                     ? missingIouThreshold
-                    : iouThreshold;
-
-            for (int j = 0; j < detections.size(); j++) {
-                if (matchedDetections[j]) continue;
-
-                double iou = calculateIoU(
-                        vehicleBox,
-                        detections.get(j).getBoundingBox()
-                );
+                    : iouThreshold);
+        }
+        assigner.assign(trackBoxes, trackThresholds, detections, trackToDetection);
 
-                if (iou > bestIoU && iou >= currentIouThreshold) {
-                    bestIoU = iou;
-                    bestDetectionIdx = j;
-                }
-            }
+        Arrays.fill(matchedDetections, 0, detectionCount, false);
+        for (int i = 0; i < trackCount; i++) {
+            int bestDetectionIdx = trackToDetection[i];
 
             // Nếu tìm thấy match
             if (bestDetectionIdx >= 0) {
-                // Lưu center Y cũ để kiểm tra crossing
-                double oldCenterY = vehicle.getBoundingBox().getBounds().getY() +
-                        vehicle.getBoundingBox().getBounds().getHeight() / 2;
+                // Lưu center Y cũ để kiểm tra crossing (vị trí dự đoán nếu đang coast)
+                double oldCenterY = tracks.currentCenterY(i);
 
                 // Update vehicle
-                vehicle.update(detections.get(bestDetectionIdx));
+                tracks.update(i, detections, bestDetectionIdx);
                 matchedDetections[bestDetectionIdx] = true;
-                matchedVehicles[i] = true;
 
                 // Kiểm tra vehicle có đi qua counting line không
                 if (countingLineEnabled) {
-                    checkAndCountLineCrossing(vehicle, oldCenterY);
+                    checkAndCountLineCrossing(i, oldCenterY);
                 }
 
-                if (vehicle.getMissingFrames() == 0) {
-                    System.out.println("✅ Re-tracked vehicle after missing: " + vehicle);
+                if (!tracks.isConfirmed(i)) {
+                    if (tracks.age[i] >= minHits) {
+                        confirm(i);
+                    }
+                } else if (AsyncLog.isEnabled(cameraId, Level.DEBUG)) {
+                    AsyncLog.log(cameraId, Level.DEBUG, "✅ Re-tracked vehicle after missing: %s", tracks.toVehicle(i));
                 }
             }
         }
 
         // Bước 3: Tạo tracked vehicle mới cho detections chưa match
-        for (int i = 0; i < detections.size(); i++) {
-            if (!matchedDetections[i]) {
-                TrackedVehicle newVehicle = new TrackedVehicle(nextId++, detections.get(i));
-                activeVehicles.add(newVehicle);
+        for (int j = 0; j < detectionCount; j++) {
+            if (!matchedDetections[j]) {
+                int i;
+                if (tracks.size() < maxActiveTracks) {
+                    i = tracks.add(nextId++, detections, j);
+                } else {
+                    // Đủ giới hạn: ghi đè track bị evict, không còn chỗ thì bỏ detection
+                    i = findEvictionVictim();
+                    if (i < 0) {
+                        droppedDetections++;
+                        continue;
+                    }
+                    if (tracks.isConfirmed(i) && AsyncLog.isEnabled(cameraId, Level.WARN)) {
+                        AsyncLog.log(cameraId, Level.WARN, "♻️ Vehicle evicted (track limit): %s", tracks.toVehicle(i));
+                    }
+                    tracks.set(i, nextId++, detections, j);
+                }
 
                 // Kiểm tra nếu vehicle mới đã đi qua line ngay từ đầu
                 if (countingLineEnabled) {
-                    double centerY = detections.get(i).getCenterY();
+                    double centerY = detections.getCenterY(j);
                     // Nếu vehicle xuất hiện bên dưới line (đang đi lên)
                     if (centerY > countingLineY) {
-                        countedVehicles.add(newVehicle.getId());
+                        tracks.markCounted(i);
                     }
                 }
 
-                System.out.println("🆕 New vehicle detected: " + newVehicle);
+                if (minHits <= 1) {
+                    confirm(i);
+                }
             }
         }
 
-        // Bước 4: Xóa vehicles bị mất quá lâu
-        List<TrackedVehicle> lostVehicles = new ArrayList<>();
-        activeVehicles.removeIf(vehicle -> {
-            if (vehicle.isLost(maxMissingFrames)) {
-                lostVehicles.add(vehicle);
-                return true;
+        // Bước 4: Xóa vehicles bị mất quá lâu, track tentative bị mất 1 frame là xóa
+        // (compact giữ nguyên thứ tự)
+        int kept = 0;
+        for (int i = 0; i < tracks.size(); i++) {
+            if (!tracks.isConfirmed(i) && tracks.missing[i] > 0) {
+                continue;
             }
-            return false;
-        });
+            if (tracks.missing[i] > maxMissingFrames) {
+                if (AsyncLog.isEnabled(cameraId, Level.INFO)) {
+                    AsyncLog.log(cameraId, Level.INFO, "❌ Vehicle lost: %s", tracks.toVehicle(i));
+                }
+                continue;
+            }
+            if (kept != i) {
+                tracks.move(i, kept);
+            }
+            kept++;
+        }
+        tracks.truncate(kept);
+    }
 
-        // Log lost vehicles
-        for (TrackedVehicle vehicle : lostVehicles) {
-            System.out.println("❌ Vehicle lost: " + vehicle);
+    /**
+     * Xác nhận track tentative, đếm luôn nếu nó đã đi qua line khi còn tentative
+     */
+    private void confirm(int index) {
+        tracks.flags[index] |= TrackStore.FLAG_CONFIRMED;
+        if (AsyncLog.isEnabled(cameraId, Level.INFO)) {
+            AsyncLog.log(cameraId, Level.INFO, "🆕 New vehicle detected: %s", tracks.toVehicle(index));
+        }
+
+        if ((tracks.flags[index] & TrackStore.FLAG_CROSSING_PENDING) != 0 && !tracks.isCounted(index)) {
+            countCrossing(index, "Down");
         }
     }
 
     /**
-     * Kiểm tra và đếm khi vehicle đi qua counting line
+     * Chọn track để evict khi đủ giới hạn: chỉ xét track không được detect ở frame này,
+     * ưu tiên tentative, sau đó track mất lâu nhất. Trả về -1 nếu không có
      */
-    private void checkAndCountLineCrossing(TrackedVehicle vehicle, double oldCenterY) {
-        int vehicleId = vehicle.getId();
+    private int findEvictionVictim() {
+        int victim = -1;
+        for (int i = 0; i < tracks.size(); i++) {
+            if (tracks.missing[i] == 0) {
+                continue;
+            }
+            if (victim < 0) {
+                victim = i;
+                continue;
+            }
+            boolean tentative = !tracks.isConfirmed(i);
+            boolean victimTentative = !tracks.isConfirmed(victim);
+            if ((tentative && !victimTentative)
+                    || (tentative == victimTentative && tracks.missing[i] > tracks.missing[victim])) {
+                victim = i;
+            }
+        }
+        return victim;
+    }
 
-        // Nếu vehicle đã được đếm rồi thì bỏ qua
-        if (countedVehicles.contains(vehicleId)) {
-            return;
+    private void ensureFrameCapacity(int trackCount, int detectionCount) {
+        if (trackThresholds.length < trackCount) {
+            int capacity = Math.max(trackCount, trackThresholds.length * 2);
+            trackThresholds = new float[capacity];
+            trackToDetection = new int[capacity];
         }
+        if (matchedDetections.length < detectionCount) {
+            matchedDetections = new boolean[Math.max(detectionCount, matchedDetections.length * 2)];
+        }
+    }
 
-        double currentCenterY = vehicle.getBoundingBox().getBounds().getY() +
-                vehicle.getBoundingBox().getBounds().getHeight() / 2;
+    /**
+     * Frame không chạy detection: tiến các vehicle theo vận tốc dự đoán
+     * và vẫn kiểm tra đi qua counting line
+     */
+    public void advance(double imageHeight) {
+        updateCountingLine(imageHeight);
 
-        // Kiểm tra xem vehicle có đi qua line không
-        // Đi từ trên xuống dưới (đi vào khung hình)
-        if (oldCenterY <= countingLineY && currentCenterY > countingLineY) {
-            // Hoặc đi từ dưới lên trên (đi ra khỏi khung hình)
-            // if (oldCenterY >= countingLineY && currentCenterY < countingLineY)
+        for (int i = 0; i < tracks.size(); i++) {
+            double oldCenterY = tracks.currentCenterY(i);
+            tracks.coasted[i]++;
 
-            countedVehicles.add(vehicleId);
-            totalVehicleCount++;
+            if (countingLineEnabled) {
+                checkAndCountLineCrossing(i, oldCenterY);
+            }
+        }
+    }
 
-            System.out.println("🎯 Vehicle crossed counting line!");
-            System.out.println("   ID: " + vehicleId);
-            System.out.println("   Type: " + vehicle.getClassName());
-            System.out.println("   Direction: " + (oldCenterY < currentCenterY ? "Down" : "Up"));
-            System.out.println("   Total count: " + totalVehicleCount);
+    /**
+     * Frame gần như không đổi so với frame detect gần nhất (motion gate):
+     * vehicle coi như đứng yên, không tăng missing, không kiểm tra counting line
+     * (vận tốc giữ nguyên, frame giữ được tính vào lần update sau)
+     */
+    public void hold() {
+        for (int i = 0; i < tracks.size(); i++) {
+            tracks.hold(i);
         }
     }
 
     /**
-     * Tính IoU (Intersection over Union) giữa 2 bounding boxes
+     * Kiểm tra có cần chạy detection ở frame tiếp theo không
+     * (có vehicle mới xuất hiện hoặc đang bị missing thì dự đoán chưa đáng tin)
      */
-    private double calculateIoU(BoundingBox box1, BoundingBox box2) {
-        Rectangle r1 = box1.getBounds();
-        Rectangle r2 = box2.getBounds();
+    public boolean needsDetection(int minStableAge) {
+        for (int i = 0; i < tracks.size(); i++) {
+            if (tracks.age[i] < minStableAge || tracks.missing[i] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void updateCountingLine(double imageHeight) {
+        // Cập nhật vị trí counting line nếu có imageHeight
+        if (imageHeight > 0) {
+            this.countingLineY = imageHeight / 2;
+        }
+    }
 
-        double x1 = Math.max(r1.getX(), r2.getX());
-        double y1 = Math.max(r1.getY(), r2.getY());
-        double x2 = Math.min(r1.getX() + r1.getWidth(), r2.getX() + r2.getWidth());
-        double y2 = Math.min(r1.getY() + r1.getHeight(), r2.getY() + r2.getHeight());
+    /**
+     * Kiểm tra và đếm khi vehicle đi qua counting line
+     */
+    private void checkAndCountLineCrossing(int index, double oldCenterY) {
+        // Nếu vehicle đã được đếm rồi thì bỏ qua (cờ nằm cùng track, mất khi track bị xóa)
+        if (tracks.isCounted(index)) {
+            return;
+        }
 
-        double intersectionWidth = Math.max(0, x2 - x1);
-        double intersectionHeight = Math.max(0, y2 - y1);
-        double intersection = intersectionWidth * intersectionHeight;
+        double currentCenterY = tracks.currentCenterY(index);
 
-        double area1 = r1.getWidth() * r1.getHeight();
-        double area2 = r2.getWidth() * r2.getHeight();
-        double union = area1 + area2 - intersection;
+        // Kiểm tra xem vehicle có đi qua line không
+        // Đi từ trên xuống dưới (đi vào khung hình)
+        if (oldCenterY <= countingLineY && currentCenterY > countingLineY) {
+            // Hoặc đi từ dưới lên trên (đi ra khỏi khung hình)
+            // if (oldCenterY >= countingLineY && currentCenterY < countingLineY)
 
-        if (union < 1e-6) {
-            return 0;
+            // Track tentative: chờ xác nhận mới đếm (tránh đếm false positive)
+            if (!tracks.isConfirmed(index)) {
+                tracks.flags[index] |= TrackStore.FLAG_CROSSING_PENDING;
+                return;
+            }
+            countCrossing(index, oldCenterY < currentCenterY ? "Down" : "Up");
         }
+    }
+
+    private void countCrossing(int index, String direction) {
+        tracks.markCounted(index);
+        totalVehicleCount++;
 
-        return intersection / union;
+        if (AsyncLog.isEnabled(cameraId, Level.INFO)) {
+            AsyncLog.log(cameraId, Level.INFO,
+                    "🎯 Vehicle crossed counting line!%n   ID: %d%n   Type: %s%n   Direction: %s%n   Total count: %d",
+                    tracks.id[index], tracks.className[index], direction, totalVehicleCount);
+        }
     }
 
     /**
@@ -231,14 +336,27 @@ public class VehicleTracker {
      * Lấy số phương tiện đang active (đang trong frame)
      */
     public int getActiveVehicleCount() {
-        return activeVehicles.size();
+        return tracks.confirmedCount();
     }
 
     /**
-     * Lấy danh sách vehicles đang active
+     * Lấy danh sách vehicles đang active (đã xác nhận, copy ra object, không dùng trên hot path)
      */
     public List<TrackedVehicle> getActiveVehicles() {
-        return new ArrayList<>(activeVehicles);
+        List<TrackedVehicle> vehicles = new ArrayList<>(tracks.size());
+        for (int i = 0; i < tracks.size(); i++) {
+            if (tracks.isConfirmed(i)) {
+                vehicles.add(tracks.toVehicle(i));
+            }
+        }
+        return vehicles;
+    }
+
+    /**
+     * Store các track đang active (đọc trực tiếp, không copy)
+     */
+    public TrackStore getTracks() {
+        return tracks;
     }
 
     /**
@@ -255,6 +373,34 @@ public class VehicleTracker {
         this.countingLineY = countingLineY;
     }
 
+    /**
+     * Camera của tracker (null = dùng level log mặc định)
+     */
+    public void setCameraId(String cameraId) {
+        this.cameraId = cameraId;
+    }
+
+    /**
+     * Số lần detect liên tiếp cần để xác nhận track (1 = xác nhận ngay)
+     */
+    public void setMinHits(int minHits) {
+        this.minHits = Math.max(1, minHits);
+    }
+
+    /**
+     * Số track tối đa (cả tentative) của tracker
+     */
+    public void setMaxActiveTracks(int maxActiveTracks) {
+        this.maxActiveTracks = Math.max(1, maxActiveTracks);
+    }
+
+    /**
+     * Số detection bị bỏ vì đã đủ giới hạn track và không có track nào evict được
+     */
+    public long getDroppedDetections() {
+        return droppedDetections;
+    }
+
     /**
      * Bật/tắt counting line
      */
@@ -263,20 +409,21 @@ public class VehicleTracker {
     }
 
     /**
-     * Kiểm tra xem một vehicle đã được đếm chưa
+     * Kiểm tra xem một vehicle đang active đã được đếm chưa
+     * (vehicle đã bị xóa khỏi tracker thì không còn trạng thái, trả về false)
      */
     public boolean isVehicleCounted(int vehicleId) {
-        return countedVehicles.contains(vehicleId);
+        int index = tracks.indexOf(vehicleId);
+        return index >= 0 && tracks.isCounted(index);
     }
 
     /**
      * Reset tracker về trạng thái ban đầu
      */
     public void reset() {
-        activeVehicles.clear();
-        countedVehicles.clear();
+        tracks.clear();
         nextId = 1;
         totalVehicleCount = 0;
-        System.out.println("🔄 Tracker reset - All counts cleared");
+        AsyncLog.log(cameraId, Level.INFO, "🔄 Tracker reset - All counts cleared");
     }
 }
\ No newline at end of file
@@ -1,15 +1,17 @@
 package org.example.counter_v2;
 
-import ai.djl.Application;
 import ai.djl.inference.Predictor;
 import ai.djl.modality.cv.Image;
 import ai.djl.modality.cv.ImageFactory;
 import ai.djl.modality.cv.output.DetectedObjects;
-import ai.djl.repository.zoo.Criteria;
 import ai.djl.repository.zoo.ZooModel;
-import ai.djl.training.util.ProgressBar;
 import ai.djl.translate.TranslateException;
+import org.example.counter.AsyncLog;
+import org.example.counter.ModelRegistry;
+import org.example.counter.MotionGate;
+import org.example.counter.AsyncLog.Level;
 
+import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
@@ -36,6 +38,17 @@ public class VehicleCounterService_v1 {
     private static final int MAX_FRAMES_TO_SKIP = 10;
     private static final double COUNTING_LINE_Y_RATIO = 0.6;
     private static final int COUNTING_LINE_MARGIN = 50;
+    // Track mới cần MIN_HITS lần detect mới được xác nhận và đếm
+    private static final int MIN_HITS = 3;
+    private static final int MAX_ACTIVE_TRACKS = 256;
+
+    // Motion gate (cùng cấu hình với VehicleCounterService): vùng counting line không đổi thì không predict
+    private final MotionGate motionGate = Boolean.getBoolean("camera.motion.enabled")
+            ? new MotionGate(Integer.getInteger("camera.motion.thumbWidth", 32),
+                    Integer.getInteger("camera.motion.pixelThreshold", 12),
+                    Double.parseDouble(System.getProperty("camera.motion.changedRatio", "0.02")),
+                    Integer.getInteger("camera.motion.maxSkip", 30))
+            : null;
 
     // Debug
     private SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss.SSS");
@@ -75,6 +88,7 @@ public class VehicleCounterService_v1 {
         System.out.println(String.format("│ Counting Line Position: %.0f%% from top          │", COUNTING_LINE_Y_RATIO * 100));
         System.out.println(String.format("│ Counting Line Margin: %d pixels                │", COUNTING_LINE_MARGIN));
         System.out.println(String.format("│ Max Frames to Skip: %d                         │", MAX_FRAMES_TO_SKIP));
+        System.out.println(String.format("│ Min Hits: %d | Max Tracks: %d                  │", MIN_HITS, MAX_ACTIVE_TRACKS));
         System.out.println("└─────────────────────────────────────────────────┘");
     }
 
@@ -84,16 +98,9 @@ public class VehicleCounterService_v1 {
     private void initializeModel() throws Exception {
         long loadStart = System.currentTimeMillis();
 
-        Criteria<Image, DetectedObjects> criteria = Criteria.builder()
-                .optApplication(Application.CV.OBJECT_DETECTION)
-                .setTypes(Image.class, DetectedObjects.class)
-                .optModelUrls("djl://ai.djl.pytorch/yolov5s")
-                .optEngine("PyTorch")
-                .optProgress(new ProgressBar())
-                .build();
-
         try {
-            model = criteria.loadModel();
+            // Model dùng chung với các service khác trong process (không load lại)
+            model = ModelRegistry.getDefault();
             predictor = model.newPredictor();
 
             long loadTime = System.currentTimeMillis() - loadStart;
@@ -121,6 +128,16 @@ public class VehicleCounterService_v1 {
             int imageWidth = image.getWidth();
             double countingLineY = imageHeight * COUNTING_LINE_Y_RATIO;
 
+            // Vùng counting line không đổi so với lần predict trước: giữ nguyên tracking
+            if (motionGate != null && image.getWrappedImage() instanceof BufferedImage buffered
+                    && !motionGate.shouldInfer(buffered, (int) countingLineY - COUNTING_LINE_MARGIN,
+                            2 * COUNTING_LINE_MARGIN)) {
+                if (AsyncLog.isEnabled(null, Level.DEBUG)) {
+                    AsyncLog.log(null, Level.DEBUG, "[FRAME %d] Unchanged, skipped detection", frameNumber);
+                }
+                return totalCount;
+            }
+
             // Detect vehicles
             DetectedObjects detections = predictor.predict(image);
 
@@ -153,14 +170,11 @@ public class VehicleCounterService_v1 {
         List<DetectedObjects.DetectedObject> items = detections.items();
 
         for (DetectedObjects.DetectedObject obj : items) {
-            String className = obj.getClassName().toLowerCase();
+            String className = obj.getClassName();
             float confidence = (float) obj.getProbability();
 
-            // Check vehicle class và confidence
-            boolean isVehicle = VEHICLE_CLASSES.stream()
-                    .anyMatch(vehicleClass -> className.contains(vehicleClass));
-
-            if (isVehicle && confidence >= CONFIDENCE_THRESHOLD) {
+            // Check confidence trước, class name COCO đã là chữ thường nên tra set trực tiếp
+            if (confidence >= CONFIDENCE_THRESHOLD && VEHICLE_CLASSES.contains(className)) {
                 ai.djl.modality.cv.output.BoundingBox bbox = obj.getBoundingBox();
                 ai.djl.modality.cv.output.Rectangle rect = bbox.getBounds();
 
@@ -231,16 +245,24 @@ public class VehicleCounterService_v1 {
             }
         }
 
-        // Update matched vehicles
+        // Update matched vehicles, xác nhận track tentative khi đủ số lần detect
         for (Map.Entry<Integer, Detection> entry : matched.entrySet()) {
             TrackedVehicle vehicle = activeVehicles.get(entry.getKey());
             vehicle.lastDetection = entry.getValue();
+            vehicle.hits++;
+            if (!vehicle.confirmed && vehicle.hits >= MIN_HITS) {
+                confirm(vehicle);
+            }
         }
 
-        // Remove lost vehicles
+        // Remove lost vehicles, track tentative bị mất 1 frame là xóa luôn (không log)
         List<Integer> removedVehicles = new ArrayList<>();
         activeVehicles.entrySet().removeIf(entry -> {
-            boolean shouldRemove = entry.getValue().framesWithoutDetection > MAX_FRAMES_TO_SKIP;
+            TrackedVehicle vehicle = entry.getValue();
+            if (!vehicle.confirmed) {
+                return vehicle.framesWithoutDetection > 0;
+            }
+            boolean shouldRemove = vehicle.framesWithoutDetection > MAX_FRAMES_TO_SKIP;
             if (shouldRemove) {
                 removedVehicles.add(entry.getKey());
             }
@@ -249,49 +271,95 @@ public class VehicleCounterService_v1 {
 
         // Print removed vehicles
         for (Integer vehicleId : removedVehicles) {
-            System.out.println(String.format("❌ Vehicle removed: ID #%d (lost tracking)", vehicleId));
+            AsyncLog.log(null, Level.INFO, "❌ Vehicle removed: ID #%d (lost tracking)", vehicleId);
         }
 
-        // Add NEW vehicles - MỖI VEHICLE MỚI = 1 COUNT
+        // Add NEW vehicles dạng tentative - chỉ đếm khi được xác nhận
         for (Detection det : unmatchedDetections) {
+            if (activeVehicles.size() >= MAX_ACTIVE_TRACKS) {
+                TrackedVehicle victim = findEvictionVictim();
+                if (victim == null) {
+                    // Không còn chỗ: bỏ detection để giữ chi phí matching có giới hạn
+                    continue;
+                }
+                activeVehicles.remove(victim.id);
+            }
+
             TrackedVehicle newVehicle = new TrackedVehicle(nextVehicleId++, det);
             activeVehicles.put(newVehicle.id, newVehicle);
+            if (newVehicle.hits >= MIN_HITS) {
+                confirm(newVehicle);
+            }
+        }
+    }
 
-            // TĂNG TOTAL COUNT KHI CÓ VEHICLE MỚI
-            totalCount++;
+    /**
+     * Xác nhận track - MỖI VEHICLE ĐƯỢC XÁC NHẬN = 1 COUNT
+     */
+    private void confirm(TrackedVehicle vehicle) {
+        vehicle.confirmed = true;
+        totalCount++;
 
-            System.out.println(String.format("➕ New vehicle: ID #%d | Type: %s | Conf: %.2f%% | Pos: (%.0f, %.0f) | ✅ TOTAL: %d",
-                    newVehicle.id,
-                    det.className.toUpperCase(),
-                    det.confidence * 100,
-                    det.getCenterX(),
-                    det.getCenterY(),
-                    totalCount));
+        if (!AsyncLog.isEnabled(null, Level.INFO)) {
+            return;
+        }
+        Detection det = vehicle.lastDetection;
+        AsyncLog.logv(null, Level.INFO, "➕ New vehicle: ID #%d | Type: %s | Conf: %.2f%% | Pos: (%.0f, %.0f) | ✅ TOTAL: %d",
+                vehicle.id,
+                det.className.toUpperCase(),
+                det.confidence * 100,
+                det.getCenterX(),
+                det.getCenterY(),
+                totalCount);
+    }
+
+    /**
+     * Chọn track để evict khi đủ MAX_ACTIVE_TRACKS: chỉ xét track không được detect ở frame này,
+     * ưu tiên tentative, sau đó track mất lâu nhất. Trả về null nếu không có
+     */
+    private TrackedVehicle findEvictionVictim() {
+        TrackedVehicle victim = null;
+        for (TrackedVehicle vehicle : activeVehicles.values()) {
+            if (vehicle.framesWithoutDetection == 0) {
+                continue;
+            }
+            if (victim == null
+                    || (!vehicle.confirmed && victim.confirmed)
+                    || (vehicle.confirmed == victim.confirmed
+                        && vehicle.framesWithoutDetection > victim.framesWithoutDetection)) {
+                victim = vehicle;
+            }
         }
+        return victim;
     }
 
     /**
      * Print frame summary - CHỈ HIỂN thị frame, time, vehicles, confidence
      */
     private void printFrameSummary(List<Detection> detections, long totalTime) {
-        System.out.println(String.format(
+        // Level/sampling tắt thì không build string nào
+        if (!AsyncLog.isSampled(null, Level.INFO, frameNumber)) {
+            return;
+        }
+
+        AsyncLog.logv(null, Level.INFO,
                 "[Frame #%d] Time: %dms | Vehicles in zone: %d | Active: %d | Total: %d | Conf: %.2f",
                 frameNumber,
                 totalTime,
                 detections.size(),
                 activeVehicles.size(),
                 totalCount,
-                CONFIDENCE_THRESHOLD));
+                CONFIDENCE_THRESHOLD);
 
         // Print tất cả vehicles được detect trong zone
         for (int i = 0; i < detections.size(); i++) {
             Detection det = detections.get(i);
-            System.out.println(String.format("  └─ [%d] %s | Conf: %.2f%% | Pos: (%.0f, %.0f)",
+            AsyncLog.logv(null, Level.INFO, "  └─ [%d] %s | Conf: %.2f%% | Pos: (%.0f, %.0f)",
                     i + 1,
                     det.className.toUpperCase(),
                     det.confidence * 100,
                     det.getCenterX(),
-                    det.getCenterY()));
+                    det.getCenterY());
         }
     }
 
@@ -322,6 +390,7 @@ public class VehicleCounterService_v1 {
     public synchronized int reset() {
         int finalCount = totalCount;
 
+        AsyncLog.flush(1000);
         System.out.println("\n╔════════════════════════════════════════════════════╗");
         System.out.println("║              SERVICE RESET                         ║");
         System.out.println("╠════════════════════════════════════════════════════╣");
@@ -334,6 +403,9 @@ public class VehicleCounterService_v1 {
         activeVehicles.clear();
         nextVehicleId = 1;
         totalCount = 0;
+        if (motionGate != null) {
+            motionGate.reset();
+        }
         frameNumber = 0;
 
         return finalCount;
@@ -350,7 +422,13 @@ public class VehicleCounterService_v1 {
      * Get active vehicle count
      */
     public synchronized int getActiveVehicleCount() {
-        return activeVehicles.size();
+        int count = 0;
+        for (TrackedVehicle vehicle : activeVehicles.values()) {
+            if (vehicle.confirmed) {
+                count++;
+            }
+        }
+        return count;
     }
 
     /**
@@ -364,14 +442,12 @@ public class VehicleCounterService_v1 {
      * Close resources
      */
     public void close() {
+        AsyncLog.flush(1000);
         System.out.println("\n[SHUTDOWN] Closing service...");
 
         if (predictor != null) {
             predictor.close();
         }
-        if (model != null) {
-            model.close();
-        }
 
         System.out.println("[SHUTDOWN] ✓ Service closed successfully.");
     }
@@ -409,11 +485,14 @@ public class VehicleCounterService_v1 {
         int id;
         Detection lastDetection;
         int framesWithoutDetection;
+        int hits;
+        boolean confirmed;
 
         TrackedVehicle(int id, Detection detection) {
             this.id = id;
             this.lastDetection = detection;
             this.framesWithoutDetection = 0;
+            this.hits = 1;
         }
     }
 }
\ No newline at end of file
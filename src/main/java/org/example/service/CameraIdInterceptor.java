@@ -0,0 +1,42 @@
+package org.example.service;
+
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+
+/**
+ * Đọc camera id từ gRPC metadata ("x-camera-id") và đưa vào Context của call
+ */
+public class CameraIdInterceptor implements ServerInterceptor {
+
+    public static final Metadata.Key<String> CAMERA_ID_HEADER =
+            Metadata.Key.of("x-camera-id", Metadata.ASCII_STRING_MARSHALLER);
+
+    public static final Context.Key<String> CAMERA_ID = Context.key("camera-id");
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call,
+                                                                 Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        String cameraId = headers.get(CAMERA_ID_HEADER);
+        if (cameraId == null || cameraId.isEmpty()) {
+            return next.startCall(call, headers);
+        }
+        Context context = Context.current().withValue(CAMERA_ID, cameraId);
+        return Contexts.interceptCall(context, call, headers, next);
+    }
+
+    /**
+     * Lấy camera id: ưu tiên field trong request, sau đó metadata, cuối cùng là camera mặc định
+     */
+    public static String resolve(String requestCameraId, String defaultCameraId) {
+        if (requestCameraId != null && !requestCameraId.isEmpty()) {
+            return requestCameraId;
+        }
+        String fromMetadata = CAMERA_ID.get();
+        return fromMetadata != null ? fromMetadata : defaultCameraId;
+    }
+}
@@ -0,0 +1,335 @@
+package org.example.service;
+
+import com.example.grpc.DataTransferProto;
+import com.example.grpc.DataTransferServiceGrpc;
+import com.google.protobuf.ByteString;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.example.counter.AsyncLog;
+import org.example.counter.AsyncLog.Level;
+import org.example.counter.CameraSession;
+import org.example.counter.CapacityExceededException;
+import org.example.counter.InputTier;
+import org.example.counter.LatencyHistogram;
+import org.example.counter.MemoryAccountant;
+import org.example.counter.NativeMemory;
+import org.example.counter.RawFrame;
+import org.example.counter.StageMetrics;
+import org.example.counter.VehicleCounterService;
+
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Implementation của DataTransferService
+ * - ReceiveData: unary, 1 frame / 1 call
+ * - StreamFrames: bidi streaming, backpressure qua gRPC flow control
+ */
+public class DataTransferServiceImpl extends DataTransferServiceGrpc.DataTransferServiceImplBase {
+
+    private final VehicleCounterService vehicleCounterService;
+    private final IngestStats ingestStats = new IngestStats();
+
+    public DataTransferServiceImpl(VehicleCounterService vehicleCounterService) {
+        this.vehicleCounterService = vehicleCounterService;
+    }
+
+    /**
+     * Lấy view ByteBuffer trên dữ liệu frame của gRPC
+     * ByteString 1 chunk (byte[] heap hoặc direct buffer của transport) được dùng trực tiếp,
+     * ByteString nhiều chunk (rope, thường gặp khi transport alias các buffer direct) phải copy thành 1 buffer liền
+     */
+    private ByteBuffer frameBuffer(ByteString data) {
+        long allocatedBefore = ingestStats.currentThreadAllocatedBytes();
+
+        ByteBuffer buffer;
+        List<ByteBuffer> chunks = data.asReadOnlyByteBufferList();
+        if (chunks.size() == 1) {
+            buffer = chunks.get(0);
+            if (buffer.isDirect()) {
+                ingestStats.recordDirect();
+            }
+        } else {
+            buffer = data.asReadOnlyByteBuffer();
+            ingestStats.recordCopy(data.size());
+        }
+
+        ingestStats.recordFrame(data.size(), ingestStats.currentThreadAllocatedBytes() - allocatedBefore);
+        return buffer;
+    }
+
+    /**
+     * Chuyển RawFrame của proto sang RawFrame của counter (không copy pixel)
+     */
+    private RawFrame rawFrame(DataTransferProto.RawFrame raw) {
+        RawFrame.PixelFormat format = switch (raw.getFormat()) {
+            case BGR24 -> RawFrame.PixelFormat.BGR24;
+            case NV12 -> RawFrame.PixelFormat.NV12;
+            default -> RawFrame.PixelFormat.RGB24;
+        };
+        return new RawFrame(raw.getWidth(), raw.getHeight(), format, raw.getStride(), frameBuffer(raw.getData()));
+    }
+
+    @Override
+    public void receiveData(DataTransferProto.DataRequest request,
+                            StreamObserver<DataTransferProto.DataResponse> responseObserver) {
+        String cameraId = CameraIdInterceptor.resolve(
+                request.getCameraId(), VehicleCounterService.DEFAULT_CAMERA_ID);
+
+        // Gọi handler và nhận int
+        int result = 0;
+        try {
+            if (request.hasRawFrame()) {
+                result = vehicleCounterService.receiveImage(cameraId, rawFrame(request.getRawFrame()));
+            } else {
+                result = vehicleCounterService.receiveImage(cameraId, frameBuffer(request.getData()));
+            }
+        } catch (IllegalArgumentException e) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+            return;
+        } catch (CapacityExceededException e) {
+            // Node hết bộ nhớ cho camera mới: client nên chuyển sang node khác
+            responseObserver.onError(Status.RESOURCE_EXHAUSTED.withDescription(e.getMessage()).asRuntimeException());
+            return;
+        }
+
+        // Trả về int
+        DataTransferProto.DataResponse response = DataTransferProto.DataResponse.newBuilder()
+                .setValue(result)
+                .setSequence(request.getSequence())
+                .build();
+
+        responseObserver.onNext(response);
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void getMetrics(DataTransferProto.MetricsRequest request,
+                           StreamObserver<DataTransferProto.MetricsResponse> responseObserver) {
+        List<CameraSession> sessions;
+        if (request.getCameraId().isEmpty()) {
+            sessions = vehicleCounterService.getSessions().snapshot();
+        } else {
+            CameraSession session = vehicleCounterService.getSessions().find(request.getCameraId());
+            if (session == null) {
+                responseObserver.onError(Status.NOT_FOUND
+                        .withDescription("Unknown camera: " + request.getCameraId()).asRuntimeException());
+                return;
+            }
+            sessions = Collections.singletonList(session);
+        }
+
+        DataTransferProto.MetricsResponse.Builder response = DataTransferProto.MetricsResponse.newBuilder()
+                .setInferenceQueueDepth(vehicleCounterService.getInferenceQueueDepth())
+                .setDecodeQueueDepth(vehicleCounterService.getDecodeQueueDepth());
+        for (CameraSession session : sessions) {
+            response.addCameras(cameraMetrics(session, request.getReset()));
+        }
+
+        // Số camera mỗi tier tính trên tất cả session (không chỉ camera được hỏi)
+        Map<Integer, Integer> camerasPerTier = new HashMap<>();
+        for (CameraSession session : vehicleCounterService.getSessions().snapshot()) {
+            camerasPerTier.merge(session.getInputSize(), 1, Integer::sum);
+        }
+        for (InputTier tier : vehicleCounterService.getInputTiers()) {
+            response.addTiers(DataTransferProto.TierMetrics.newBuilder()
+                    .setInputSize(tier.getInputSize())
+                    .setCameras(camerasPerTier.getOrDefault(tier.getInputSize(), 0))
+                    .setFrames(tier.getFrames())
+                    .setRelativeCost(tier.getRelativeCost())
+                    .setGflopsPerFrame(tier.getGflopsPerFrame())
+                    .setTotalGflops(tier.getTotalGflops()));
+        }
+
+        MemoryAccountant.Usage usage = vehicleCounterService.getMemoryUsage();
+        NativeMemory.Snapshot memory = usage.getProcess();
+        response.setMemory(DataTransferProto.MemoryMetrics.newBuilder()
+                .setHeapUsed(memory.getHeapUsedBytes())
+                .setDirect(memory.getDirectBytes())
+                .setTensorBuffers(memory.getTensorBufferBytes())
+                .setResident(memory.getResidentBytes())
+                .setOtherNative(memory.getOtherNativeBytes())
+                .setModel(usage.getModelBytes())
+                .setDecodePool(usage.getSharedBytes())
+                .setSessionsHeap(usage.getSessionHeapBytes())
+                .setSessionsOffHeap(usage.getSessionOffHeapBytes())
+                .setCap(Math.max(0, vehicleCounterService.getMemoryAccountant().getMaxBytes()))
+                .setRefusedSessions(vehicleCounterService.getMemoryAccountant().getRefusedSessions()));
+        response.setIngest(DataTransferProto.IngestMetrics.newBuilder()
+                .setFrames(ingestStats.getFrames())
+                .setBytes(ingestStats.getFrameBytes())
+                .setDirectFrames(ingestStats.getDirectFrames())
+                .setCopies(ingestStats.getCopies())
+                .setCopiedBytes(ingestStats.getCopiedBytes())
+                .setAllocatedBytesPerFrame(ingestStats.getAllocatedBytesPerFrame()));
+
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+
+    private DataTransferProto.CameraMetrics cameraMetrics(CameraSession session, boolean reset) {
+        StageMetrics.Snapshot snapshot = session.getMetrics().snapshot(reset);
+        DataTransferProto.CameraMetrics.Builder camera = DataTransferProto.CameraMetrics.newBuilder()
+                .setCameraId(session.getCameraId())
+                .setFrames(snapshot.getFrames())
+                .setFramesPerSecond(snapshot.getFramesPerSecond())
+                .setInFlight(session.getInFlightFrames())
+                .setInputSize(session.getInputSize())
+                .setHeapBytes(session.estimateHeapBytes())
+                .setOffHeapBytes(session.estimateOffHeapBytes());
+        if (session.getMotionGate() != null) {
+            camera.setMotionSkipped(session.getMotionGate().getTotalSkipped());
+        }
+        // Counter của tracker chỉ được ghi trong stage tracking (giữ lock của session)
+        synchronized (session) {
+            camera.setDroppedDetections(session.getTracker().getDroppedDetections());
+        }
+
+        for (Map.Entry<StageMetrics.Stage, LatencyHistogram.Snapshot> entry : snapshot.getStages().entrySet()) {
+            LatencyHistogram.Snapshot stage = entry.getValue();
+            camera.addStages(DataTransferProto.StageLatency.newBuilder()
+                    .setStage(entry.getKey().name())
+                    .setCount(stage.getCount())
+                    .setP50Us(stage.percentileMicros(50))
+                    .setP99Us(stage.percentileMicros(99))
+                    .setP999Us(stage.percentileMicros(99.9))
+                    .setMaxUs(stage.getMaxMicros())
+                    .setMeanUs(stage.meanMicros()));
+        }
+        return camera.build();
+    }
+
+    /**
+     * Status của 1 frame lỗi, cùng cách map với ReceiveData (frame không hợp lệ = INVALID_ARGUMENT)
+     */
+    private static Status frameStatus(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                ? error.getCause()
+                : error;
+        if (cause instanceof UncheckedIOException io) {
+            // Không decode được ảnh
+            return Status.INVALID_ARGUMENT.withDescription(io.getCause().getMessage());
+        }
+        if (cause instanceof IllegalArgumentException) {
+            return Status.INVALID_ARGUMENT.withDescription(cause.getMessage());
+        }
+        return Status.INTERNAL.withDescription(cause.getMessage());
+    }
+
+    @Override
+    public StreamObserver<DataTransferProto.DataRequest> streamFrames(
+            StreamObserver<DataTransferProto.DataResponse> responseObserver) {
+        ServerCallStreamObserver<DataTransferProto.DataResponse> serverObserver =
+                (ServerCallStreamObserver<DataTransferProto.DataResponse>) responseObserver;
+
+        String streamCameraId = CameraIdInterceptor.resolve(null, VehicleCounterService.DEFAULT_CAMERA_ID);
+
+        // Số frame đã nhận nhưng chưa trả kết quả; +1 cho tới khi client gọi onCompleted
+        AtomicInteger pending = new AtomicInteger(1);
+
+        // Stream đã kết thúc bằng lỗi (vd camera bị từ chối vì vượt cap bộ nhớ)
+        AtomicBoolean failed = new AtomicBoolean(false);
+
+        // Tự điều khiển số message nhận vào: frame tiếp theo chỉ được request khi frame trước đã có slot
+        // trong pipeline của camera và client đọc kịp kết quả (không thread nào phải chờ camera chậm)
+        serverObserver.disableAutoRequest();
+        AtomicBoolean wantNext = new AtomicBoolean(true);
+        Runnable requestNext = () -> {
+            if (!failed.get() && serverObserver.isReady() && wantNext.compareAndSet(true, false)) {
+                serverObserver.request(1);
+            }
+        };
+        serverObserver.setOnReadyHandler(requestNext);
+
+        return new StreamObserver<>() {
+            @Override
+            public void onNext(DataTransferProto.DataRequest request) {
+                if (failed.get()) {
+                    return;
+                }
+                String cameraId = request.getCameraId().isEmpty() ? streamCameraId : request.getCameraId();
+                long sequence = request.getSequence();
+                pending.incrementAndGet();
+
+                // Frame vào pipeline khi camera có slot trống, kết quả được gửi về khi stage tracking xong
+                CompletableFuture<CompletableFuture<Integer>> accepted;
+                try {
+                    accepted = request.hasRawFrame()
+                            ? vehicleCounterService.submitFrameWhenReady(cameraId, rawFrame(request.getRawFrame()))
+                            : vehicleCounterService.submitFrameWhenReady(cameraId, frameBuffer(request.getData()));
+                } catch (IllegalArgumentException e) {
+                    accepted = CompletableFuture.completedFuture(CompletableFuture.failedFuture(e));
+                } catch (CapacityExceededException e) {
+                    // Node hết bộ nhớ cho camera mới: kết thúc stream để client chuyển sang node khác
+                    pending.decrementAndGet();
+                    if (failed.compareAndSet(false, true)) {
+                        synchronized (serverObserver) {
+                            serverObserver.onError(Status.RESOURCE_EXHAUSTED
+                                    .withDescription(e.getMessage()).asRuntimeException());
+                        }
+                    }
+                    return;
+                }
+
+                accepted.whenComplete((submitted, error) -> {
+                    CompletableFuture<Integer> result = error != null
+                            ? CompletableFuture.failedFuture(error)
+                            : submitted;
+                    // Frame đã có slot: nhận frame tiếp theo (ngay hoặc khi client đọc kịp)
+                    wantNext.set(true);
+                    requestNext.run();
+
+                    result.whenComplete((value, frameError) -> {
+                        DataTransferProto.DataResponse.Builder response = DataTransferProto.DataResponse.newBuilder()
+                                .setSequence(sequence);
+                        if (frameError == null) {
+                            response.setValue(value);
+                        } else {
+                            // Frame bị từ chối / lỗi: báo status riêng của frame, client phân biệt được với "0 xe"
+                            Status status = frameStatus(frameError);
+                            response.setStatus(status.getCode().value())
+                                    .setError(String.valueOf(status.getDescription()));
+                        }
+                        synchronized (serverObserver) {
+                            if (!serverObserver.isCancelled() && !failed.get()) {
+                                serverObserver.onNext(response.build());
+                            }
+                        }
+                        finishOne();
+                    });
+                });
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                // Client hủy / transport lỗi: call đã kết thúc, kết quả của frame còn trong pipeline bị bỏ
+                // và không request thêm frame
+                failed.set(true);
+                AsyncLog.log(streamCameraId, Level.WARN, "❌ Stream error from camera %s: %s",
+                        streamCameraId, Status.fromThrowable(t));
+            }
+
+            @Override
+            public void onCompleted() {
+                finishOne();
+            }
+
+            private void finishOne() {
+                if (pending.decrementAndGet() == 0 && !failed.get()) {
+                    synchronized (serverObserver) {
+                        serverObserver.onCompleted();
+                    }
+                }
+            }
+        };
+    }
+}
@@ -3,11 +3,10 @@ package org.example.service;
 import ai.djl.MalformedModelException;
 import ai.djl.repository.zoo.ModelNotFoundException;
 import ai.djl.translate.TranslateException;
-import com.example.grpc.DataTransferProto;
-import com.example.grpc.DataTransferServiceGrpc;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
-import io.grpc.stub.StreamObserver;
+import io.grpc.ServerInterceptors;
+import org.example.counter.ModelRegistry;
 import org.example.counter.VehicleCounterService;
 import org.example.counter_v2.VehicleCounterService_v1;
 
@@ -21,25 +20,8 @@ public class  GrpcServerController {
     public GrpcServerController(int port) throws Exception {
         try {
             server = ServerBuilder.forPort(port)
-                    .addService(new DataTransferServiceGrpc.DataTransferServiceImplBase() {
-                        @Override
-                        public void receiveData(DataTransferProto.DataRequest request,
-                                                StreamObserver<DataTransferProto.DataResponse> responseObserver) {
-                            byte[] data = request.getData().toByteArray();
-
-                            // Gọi handler và nhận int
-                            int result = 0;
-                            result = vehicleCounterService.receiveImage(data);
-
-                            // Trả về int
-                            DataTransferProto.DataResponse response = DataTransferProto.DataResponse.newBuilder()
-                                    .setValue(result)
-                                    .build();
-
-                            responseObserver.onNext(response);
-                            responseObserver.onCompleted();
-                        }
-                    })
+                    .addService(ServerInterceptors.intercept(
+                            new DataTransferServiceImpl(vehicleCounterService), new CameraIdInterceptor()))
                     .build()
                     .start();
             System.out.println("Server started on port " + port);
@@ -54,5 +36,7 @@ public class  GrpcServerController {
         if (server != null) {
             server.shutdown();
         }
+        vehicleCounterService.close();
+        ModelRegistry.closeAll();
     }
 }
\ No newline at end of file
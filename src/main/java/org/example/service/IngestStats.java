@@ -0,0 +1,104 @@
+package org.example.service;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Đếm số lần copy và số byte heap được cấp phát trên đường ingest (ByteString → decoder)
+ * Dùng để xác nhận frame không còn bị copy khi đi từ gRPC buffer vào decoder
+ */
+public class IngestStats {
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN = threadMxBean();
+
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong frameBytes = new AtomicLong();
+    private final AtomicLong directFrames = new AtomicLong();
+    private final AtomicLong copies = new AtomicLong();
+    private final AtomicLong copiedBytes = new AtomicLong();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+
+    private static com.sun.management.ThreadMXBean threadMxBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported()) {
+                sunBean.setThreadAllocatedMemoryEnabled(true);
+                return sunBean;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Số byte heap thread hiện tại đã cấp phát (0 nếu JVM không hỗ trợ)
+     */
+    public long currentThreadAllocatedBytes() {
+        return THREAD_MX_BEAN != null ? THREAD_MX_BEAN.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    /**
+     * Ghi nhận 1 frame đã ingest
+     *
+     * @param size Kích thước frame
+     * @param allocated Số byte heap cấp phát trong lúc chuyển frame cho decoder
+     */
+    public void recordFrame(int size, long allocated) {
+        frames.incrementAndGet();
+        frameBytes.addAndGet(size);
+        allocatedBytes.addAndGet(allocated);
+    }
+
+    /**
+     * Ghi nhận 1 frame được chuyển cho decoder ngay trên direct buffer của transport (không copy)
+     */
+    public void recordDirect() {
+        directFrames.incrementAndGet();
+    }
+
+    /**
+     * Ghi nhận 1 lần phải copy frame (ví dụ ByteString gồm nhiều chunk)
+     */
+    public void recordCopy(int size) {
+        copies.incrementAndGet();
+        copiedBytes.addAndGet(size);
+    }
+
+    public long getFrames() {
+        return frames.get();
+    }
+
+    public long getFrameBytes() {
+        return frameBytes.get();
+    }
+
+    public long getDirectFrames() {
+        return directFrames.get();
+    }
+
+    public long getCopies() {
+        return copies.get();
+    }
+
+    public long getCopiedBytes() {
+        return copiedBytes.get();
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    /**
+     * Heap cấp phát trung bình mỗi frame (≈ 0 khi không copy)
+     */
+    public long getAllocatedBytesPerFrame() {
+        return allocatedBytes.get() / Math.max(1, frames.get());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Ingest[frames=%d, bytes=%d, direct=%d, copies=%d, copiedBytes=%d, allocated/frame=%d]",
+                frames.get(), frameBytes.get(), directFrames.get(), copies.get(), copiedBytes.get(),
+                getAllocatedBytesPerFrame());
+    }
+}
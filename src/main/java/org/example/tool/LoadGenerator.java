@@ -0,0 +1,336 @@
+package org.example.tool;
+
+import com.example.grpc.DataTransferProto;
+import com.example.grpc.DataTransferServiceGrpc;
+import com.google.protobuf.ByteString;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import org.example.counter.LatencyHistogram;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+/**
+ * Load generator: giả lập N camera, mỗi camera mở 1 StreamFrames và đẩy frame JPEG theo fps mục tiêu
+ * Báo cáo throughput đạt được, percentile độ trễ, frame bị drop (stream chưa sẵn sàng) và frame trễ
+ *
+ * Chạy:
+ *   java -cp CameraAI.jar org.example.tool.LoadGenerator --target=localhost:9090 --cameras=16 --fps=10
+ *        --duration=60 [--frames=/path/to/jpegs] [--late-ms=100] [--report-sec=5]
+ *
+ * Không có --frames thì dùng frame JPEG tự sinh. Kết hợp server chạy -Dcamera.detector=synthetic
+ * để đo scale end-to-end mà không cần tải model.
+ */
+public class LoadGenerator {
+
+    // Số frame tối đa chờ kết quả mỗi camera (ring lưu thời điểm gửi)
+    private static final int MAX_OUTSTANDING = 1024;
+
+    private final List<ByteString> frames;
+    private final long lateNanos;
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong late = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong erroredStreams = new AtomicLong();
+    private final AtomicLong unanswered = new AtomicLong();
+
+    public LoadGenerator(List<ByteString> frames, long lateNanos) {
+        this.frames = frames;
+        this.lateNanos = lateNanos;
+    }
+
+    /**
+     * Stream của 1 camera giả lập
+     */
+    private final class CameraStream implements ClientResponseObserver<DataTransferProto.DataRequest, DataTransferProto.DataResponse> {
+        private final String cameraId;
+        private final int frameOffset;
+        // Ghi ở thread gửi, đọc ở thread gRPC nhận response
+        private final AtomicLongArray sendNanos = new AtomicLongArray(MAX_OUTSTANDING);
+        private final AtomicLong acknowledged = new AtomicLong();
+        private ClientCallStreamObserver<DataTransferProto.DataRequest> requests;
+        private long sequence = 0;
+        private volatile boolean finished = false;
+        // Stream đã kết thúc (onError/onCompleted): không còn response nào để chờ
+        private volatile boolean terminated = false;
+
+        private CameraStream(String cameraId, int frameOffset) {
+            this.cameraId = cameraId;
+            this.frameOffset = frameOffset;
+        }
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<DataTransferProto.DataRequest> requestStream) {
+            this.requests = requestStream;
+        }
+
+        /**
+         * Gửi frame tiếp theo, drop nếu server chưa nhận kịp (flow control) hoặc quá nhiều frame chờ
+         */
+        private synchronized void tick() {
+            if (finished) {
+                return;
+            }
+            if (!requests.isReady() || sequence - acknowledged.get() >= MAX_OUTSTANDING) {
+                dropped.incrementAndGet();
+                return;
+            }
+            long seq = sequence++;
+            sendNanos.set((int) (seq % MAX_OUTSTANDING), System.nanoTime());
+            requests.onNext(DataTransferProto.DataRequest.newBuilder()
+                    .setCameraId(cameraId)
+                    .setSequence(seq)
+                    .setData(frames.get((int) ((frameOffset + seq) % frames.size())))
+                    .build());
+            sent.incrementAndGet();
+        }
+
+        private synchronized void finish() {
+            if (!finished) {
+                finished = true;
+                requests.onCompleted();
+            }
+        }
+
+        private boolean isDrained() {
+            return terminated || acknowledged.get() >= sequence;
+        }
+
+        @Override
+        public void onNext(DataTransferProto.DataResponse response) {
+            long nanos = System.nanoTime() - sendNanos.get((int) (response.getSequence() % MAX_OUTSTANDING));
+            latency.recordNanos(nanos);
+            if (nanos > lateNanos) {
+                late.incrementAndGet();
+            }
+            received.incrementAndGet();
+            if (response.getStatus() != 0) {
+                rejected.incrementAndGet();
+            }
+            acknowledged.incrementAndGet();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            erroredStreams.incrementAndGet();
+            synchronized (this) {
+                finished = true;
+                terminated = true;
+                unanswered.addAndGet(Math.max(0, sequence - acknowledged.get()));
+            }
+            System.err.println("❌ Stream error from camera " + cameraId + ": " + t.getMessage());
+        }
+
+        @Override
+        public void onCompleted() {
+            terminated = true;
+        }
+    }
+
+    /**
+     * Chạy tải lên server, in báo cáo định kỳ và báo cáo cuối
+     */
+    public void run(String target, int cameras, double fps, int durationSec, int reportSec) throws InterruptedException {
+        ManagedChannel channel = ManagedChannelBuilder.forTarget(target)
+                .usePlaintext()
+                .maxInboundMessageSize(64 * 1024 * 1024)
+                .build();
+        DataTransferServiceGrpc.DataTransferServiceStub stub = DataTransferServiceGrpc.newStub(channel);
+
+        System.out.printf("🚦 Load: %d cameras x %.1f fps → %s for %ds (%d frames, late > %d ms)%n",
+                cameras, fps, target, durationSec, frames.size(), TimeUnit.NANOSECONDS.toMillis(lateNanos));
+
+        List<CameraStream> streams = new ArrayList<>(cameras);
+        for (int i = 0; i < cameras; i++) {
+            CameraStream stream = new CameraStream("loadgen-" + i, i * 7);
+            stub.streamFrames(stream);
+            streams.add(stream);
+        }
+
+        // Các camera lệch pha nhau trong 1 chu kỳ frame để tải đều
+        long periodNanos = (long) (1e9 / fps);
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
+                Math.min(cameras, Runtime.getRuntime().availableProcessors()), r -> {
+                    Thread t = new Thread(r, "loadgen-tick");
+                    t.setDaemon(true);
+                    return t;
+                });
+        for (int i = 0; i < cameras; i++) {
+            CameraStream stream = streams.get(i);
+            scheduler.scheduleAtFixedRate(stream::tick, periodNanos * i / cameras, periodNanos, TimeUnit.NANOSECONDS);
+        }
+
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(durationSec);
+        long lastReceived = 0;
+        long lastReport = start;
+        while (System.nanoTime() < end) {
+            Thread.sleep(Math.min(TimeUnit.SECONDS.toMillis(reportSec),
+                    Math.max(1, TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime()))));
+            long now = System.nanoTime();
+            long totalReceived = received.get();
+            System.out.printf("   [%3ds] %.1f fps | sent %d | received %d | dropped %d | late %d%n",
+                    TimeUnit.NANOSECONDS.toSeconds(now - start),
+                    (totalReceived - lastReceived) * 1e9 / Math.max(1, now - lastReport),
+                    sent.get(), totalReceived, dropped.get(), late.get());
+            lastReceived = totalReceived;
+            lastReport = now;
+        }
+
+        scheduler.shutdownNow();
+        long sendEnd = System.nanoTime();
+
+        // Chờ kết quả của các frame đã gửi
+        for (CameraStream stream : streams) {
+            stream.finish();
+        }
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < drainDeadline && !streams.stream().allMatch(CameraStream::isDrained)) {
+            Thread.sleep(10);
+        }
+
+        printReport(cameras, fps, (sendEnd - start) / 1e9);
+        channel.shutdownNow();
+        channel.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private void printReport(int cameras, double fps, double seconds) {
+        LatencyHistogram.Snapshot snapshot = latency.snapshot(false);
+        long totalSent = sent.get();
+        long totalReceived = received.get();
+
+        System.out.println("\n" + "=".repeat(100));
+        System.out.println("📈 LOAD REPORT");
+        System.out.println("=".repeat(100));
+        System.out.printf("Target:      %.1f fps (%d cameras x %.1f fps)%n", cameras * fps, cameras, fps);
+        System.out.printf("Achieved:    %.1f fps (%.1f fps/camera)%n",
+                totalReceived / seconds, totalReceived / seconds / cameras);
+        System.out.printf("Frames:      sent %d | received %d (rejected %d) | lost %d%n",
+                totalSent, totalReceived, rejected.get(), totalSent - totalReceived - unanswered.get());
+        System.out.printf("Errored:     %d streams (%d frames unanswered when the stream failed)%n",
+                erroredStreams.get(), unanswered.get());
+        System.out.printf("Dropped:     %d (%.2f%% of scheduled, stream not ready)%n",
+                dropped.get(), 100.0 * dropped.get() / Math.max(1, totalSent + dropped.get()));
+        System.out.printf("Late:        %d (%.2f%% of received)%n",
+                late.get(), 100.0 * late.get() / Math.max(1, totalReceived));
+        System.out.printf("Latency ms:  p50 %.1f | p99 %.1f | p999 %.1f | max %.1f | mean %.1f%n",
+                snapshot.percentileMicros(50) / 1000.0,
+                snapshot.percentileMicros(99) / 1000.0,
+                snapshot.percentileMicros(99.9) / 1000.0,
+                snapshot.getMaxMicros() / 1000.0,
+                snapshot.meanMicros() / 1000.0);
+        System.out.println("=".repeat(100));
+    }
+
+    /**
+     * Đọc tất cả file .jpg/.jpeg trong thư mục (sắp theo tên)
+     */
+    static List<ByteString> loadFrames(Path directory) throws IOException {
+        List<ByteString> frames = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.sorted().toList()) {
+                String name = file.getFileName().toString().toLowerCase();
+                if (name.endsWith(".jpg") || name.endsWith(".jpeg")) {
+                    frames.add(ByteString.copyFrom(Files.readAllBytes(file)));
+                }
+            }
+        }
+        if (frames.isEmpty()) {
+            throw new IOException("No JPEG frames in " + directory);
+        }
+        return frames;
+    }
+
+    /**
+     * Sinh frame JPEG: các khối chữ nhật chạy dọc khung hình (cố định theo seed)
+     */
+    static List<ByteString> syntheticFrames(int count, int width, int height) throws IOException {
+        Random random = new Random(1);
+        int objects = 12;
+        int[] x = new int[objects];
+        int[] y = new int[objects];
+        int[] speed = new int[objects];
+        Color[] colors = new Color[objects];
+        for (int i = 0; i < objects; i++) {
+            x[i] = random.nextInt(width - 60);
+            y[i] = random.nextInt(height);
+            speed[i] = 2 + random.nextInt(6);
+            colors[i] = new Color(random.nextInt(0xFFFFFF));
+        }
+
+        List<ByteString> frames = new ArrayList<>(count);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        for (int f = 0; f < count; f++) {
+            Graphics2D g = image.createGraphics();
+            g.setColor(Color.DARK_GRAY);
+            g.fillRect(0, 0, width, height);
+            for (int i = 0; i < objects; i++) {
+                g.setColor(colors[i]);
+                g.fillRect(x[i], (y[i] + speed[i] * f) % height, 60, 40);
+            }
+            g.dispose();
+
+            out.reset();
+            ImageIO.write(image, "jpg", out);
+            frames.add(ByteString.copyFrom(out.toByteArray()));
+        }
+        return frames;
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int eq = arg.indexOf('=');
+                if (eq > 0) {
+                    options.put(arg.substring(2, eq), arg.substring(eq + 1));
+                } else {
+                    options.put(arg.substring(2), "true");
+                }
+            }
+        }
+        return options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArgs(args);
+        String target = options.getOrDefault("target", "localhost:9090");
+        int cameras = Integer.parseInt(options.getOrDefault("cameras", "4"));
+        double fps = Double.parseDouble(options.getOrDefault("fps", "10"));
+        int duration = Integer.parseInt(options.getOrDefault("duration", "30"));
+        int reportSec = Integer.parseInt(options.getOrDefault("report-sec", "5"));
+        long lateMillis = Long.parseLong(options.getOrDefault("late-ms", String.valueOf((long) (1000 / fps))));
+
+        List<ByteString> frames = options.containsKey("frames")
+                ? loadFrames(Paths.get(options.get("frames")))
+                : syntheticFrames(64, 640, 360);
+
+        new LoadGenerator(frames, TimeUnit.MILLISECONDS.toNanos(lateMillis))
+                .run(target, cameras, fps, duration, reportSec);
+    }
+}
@@ -0,0 +1,144 @@
+package org.example.counter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Kernel SIMD phải cho kết quả giống bản scalar từng bit,
+ * và cả 2 bản float phải sát với cách tính IoU bằng double trước đây
+ */
+class IouMatrixTest {
+
+    // Sai số cho phép so với IoU double (tọa độ tới ~2000 px, box nhỏ nhất 4 px)
+    private static final double DOUBLE_TOLERANCE = 1e-4;
+
+    // Đủ để phần dư sau vòng lặp vector có mọi độ dài với lane count tới 64
+    private static final int MAX_DETECTIONS = 67;
+
+    @Test
+    void randomBoxesMatchScalarAndDouble() {
+        Random random = new Random(42);
+        for (int detectionCount = 1; detectionCount <= MAX_DETECTIONS; detectionCount++) {
+            BoxBuffer tracks = randomBoxes(random, 1 + random.nextInt(12));
+            BoxBuffer detections = randomBoxes(random, detectionCount);
+            assertMatches(tracks, detections);
+        }
+    }
+
+    @Test
+    void overlappingBoxesMatchScalarAndDouble() {
+        // Detection là track dịch đi vài pixel: IoU trải đều 0..1 thay vì phần lớn bằng 0
+        Random random = new Random(7);
+        for (int detectionCount = 1; detectionCount <= MAX_DETECTIONS; detectionCount++) {
+            BoxBuffer tracks = randomBoxes(random, 4);
+            BoxBuffer detections = new BoxBuffer(detectionCount);
+            for (int d = 0; d < detectionCount; d++) {
+                int t = d % tracks.size();
+                detections.add(tracks.getX(t) + random.nextFloat() * 40 - 20,
+                        tracks.getY(t) + random.nextFloat() * 40 - 20,
+                        tracks.getWidth(t) * (0.8 + random.nextFloat() * 0.4),
+                        tracks.getHeight(t) * (0.8 + random.nextFloat() * 0.4));
+            }
+            assertMatches(tracks, detections);
+        }
+    }
+
+    @Test
+    void edgeCases() {
+        BoxBuffer tracks = new BoxBuffer(4);
+        tracks.add(100, 100, 50, 80);
+        tracks.add(0, 0, 0, 0);          // Diện tích 0
+        tracks.add(300, 300, 0, 40);     // Chiều rộng 0
+        tracks.add(1900, 1060, 20, 20);  // Sát góc khung 1920x1080
+
+        BoxBuffer detections = new BoxBuffer(8);
+        detections.add(100, 100, 50, 80);    // Trùng track 0
+        detections.add(0, 0, 0, 0);          // Trùng track 1, cả 2 diện tích 0
+        detections.add(160, 100, 50, 80);    // Rời track 0 theo X
+        detections.add(100, 180, 50, 80);    // Chạm cạnh dưới track 0 (giao = 0)
+        detections.add(110, 110, 10, 10);    // Nằm trong track 0
+        detections.add(300, 300, 10, 40);    // Chứa track 2 (diện tích 0)
+        detections.add(1910, 1070, 20, 20);  // Giao 1 phần với track 3
+        detections.add(5, 5, 0, 0);          // Điểm
+
+        // Số detection không chia hết cho lane count: chạy cả phần vector lẫn phần dư
+        for (int count = 1; count <= detections.size(); count++) {
+            BoxBuffer prefix = new BoxBuffer(count);
+            for (int d = 0; d < count; d++) {
+                prefix.add(detections.getX(d), detections.getY(d), detections.getWidth(d), detections.getHeight(d));
+            }
+            assertMatches(tracks, prefix);
+        }
+
+        float[] out = new float[tracks.size() * detections.size()];
+        VectorIouKernel.compute(tracks, detections, out);
+        int n = detections.size();
+        assertEquals(1f, out[0], "identical boxes");
+        assertEquals(0f, out[n + 1], "two zero-area boxes");
+        assertEquals(0f, out[2], "disjoint boxes");
+        assertEquals(0f, out[3], "boxes sharing only an edge");
+        assertEquals(100f / (50 * 80), out[4], 1e-6, "box inside another");
+        assertEquals(0f, out[2 * n + 5], "zero-area box inside another");
+        assertEquals(100f / 700, out[3 * n + 6], 1e-6, "partial overlap");
+        assertEquals(0f, out[7], "point outside");
+    }
+
+    @Test
+    void emptyInputs() {
+        BoxBuffer tracks = randomBoxes(new Random(1), 3);
+        float[] out = new float[0];
+        VectorIouKernel.compute(tracks, new BoxBuffer(1), out);
+        IouMatrix.computeScalar(tracks, new BoxBuffer(1), out);
+        VectorIouKernel.compute(new BoxBuffer(1), tracks, out);
+    }
+
+    private static void assertMatches(BoxBuffer tracks, BoxBuffer detections) {
+        int n = detections.size();
+        float[] vector = new float[tracks.size() * n];
+        float[] scalar = new float[tracks.size() * n];
+        VectorIouKernel.compute(tracks, detections, vector);
+        IouMatrix.computeScalar(tracks, detections, scalar);
+
+        for (int t = 0; t < tracks.size(); t++) {
+            for (int d = 0; d < n; d++) {
+                int i = t * n + d;
+                String cell = "track " + t + ", detection " + d + " of " + n;
+                assertEquals(Float.floatToIntBits(scalar[i]), Float.floatToIntBits(vector[i]),
+                        () -> cell + ": vector " + vector[i] + " != scalar " + scalar[i]);
+                assertEquals(doubleIou(tracks, t, detections, d), scalar[i], DOUBLE_TOLERANCE, cell);
+            }
+        }
+    }
+
+    /**
+     * IoU tính bằng double như VehicleTracker trước khi chuyển sang IouMatrix
+     */
+    private static double doubleIou(BoxBuffer a, int i, BoxBuffer b, int j) {
+        double x1 = Math.max(a.getX(i), b.getX(j));
+        double y1 = Math.max(a.getY(i), b.getY(j));
+        double x2 = Math.min((double) a.getX(i) + a.getWidth(i), (double) b.getX(j) + b.getWidth(j));
+        double y2 = Math.min((double) a.getY(i) + a.getHeight(i), (double) b.getY(j) + b.getHeight(j));
+
+        double intersection = Math.max(0, x2 - x1) * Math.max(0, y2 - y1);
+        double area1 = (double) a.getWidth(i) * a.getHeight(i);
+        double area2 = (double) b.getWidth(j) * b.getHeight(j);
+        double union = area1 + area2 - intersection;
+
+        if (union < 1e-6) {
+            return 0;
+        }
+        return intersection / union;
+    }
+
+    private static BoxBuffer randomBoxes(Random random, int count) {
+        BoxBuffer boxes = new BoxBuffer(count);
+        for (int i = 0; i < count; i++) {
+            boxes.add(random.nextFloat() * 1900, random.nextFloat() * 1060,
+                    4 + random.nextFloat() * 400, 4 + random.nextFloat() * 300);
+        }
+        return boxes;
+    }
+}